@@ -1,107 +1,190 @@
 package expressivo;
 
+import java.util.Arrays;
 import java.util.Map;
- 
+
 /**
  * An immutable type representing an addition expression
+ * of two or more terms
  */
 public class Addition implements Expression {
-    private final Expression left;
-    private final Expression right;
+    private final Expression[] terms;
+    private final int hash;
 
     // Abstraction Function
-    //   represents an addition expression made up of
-    //   two subexpressions
+    //   represents the sum terms[0] + terms[1] + ... + terms[n-1]
+    //   Since sums are associative, the grouping of a sum is not
+    //   kept: any nested sum is flattened into its terms
     //
     // Representation Invariant
-    //   The left and right are non-null immutable expressions
+    //   terms.length >= 2
+    //   terms contains non-null immutable expressions, none of which
+    //   is an Addition
+    //   hash is the sequence hash of terms,
+    //     terms[0].hashCode()*37^(n-1) + ... + terms[n-1].hashCode()
     //
     // Safety From Exposure
     //   - All fields are private and final
-    //   - left and right are immutable
+    //   - terms is never returned, and is only shared with callers
+    //     of the package-private constructor, which hand it over
+    //   - the elements of terms are immutable
     //   - Addition shares its rep with other implementations
     //     but they do not modify it
-    
+
     private void checkRep() {
-        assert left != null;
-        assert right != null;
+        assert terms.length >= 2;
+        for (Expression term : terms) {
+            assert term != null;
+            assert !(term instanceof Addition);
+        }
     }
-    public Addition(Expression left, Expression right) {
-        this.left = left;
-        this.right = right;
+    Addition(Expression left, Expression right) {
+        this(concat(left, right));
+    }
+    /**
+     * @param terms two or more non-null terms, none of which is an Addition;
+     *        the array is owned by the new sum and must not be modified
+     */
+    Addition(Expression[] terms) {
+        this.terms = terms;
+
+        int result = 0;
+        for (Expression term : terms) {
+            result = 37*result + term.hashCode();
+        }
+        this.hash = result;
         checkRep();
     }
+    /**
+     * @param left non-null expression
+     * @param right non-null expression
+     * @return the canonical sum left + right, not simplified
+     */
+    static Addition of(Expression left, Expression right) {
+        return Interner.intern(new Addition(left, right));
+    }
+    /**
+     * @param terms two or more non-null expressions, sums among them
+     *        being flattened; the array is not modified or retained
+     * @return the canonical sum terms[0] + ... + terms[n-1], not simplified
+     */
+    static Addition of(Expression... terms) {
+        int count = 0;
+        for (Expression term : terms) {
+            count += termCount(term);
+        }
+        final Expression[] flat = new Expression[count];
+        int next = 0;
+        for (Expression term : terms) {
+            next = copyTerms(term, flat, next);
+        }
+        return Interner.intern(new Addition(flat));
+    }
+
+    private static int termCount(Expression e) {
+        return e instanceof Addition ? ((Addition) e).terms.length : 1;
+    }
+    /** Copies the terms of e into dest at index start, returning the next free index */
+    private static int copyTerms(Expression e, Expression[] dest, int start) {
+        if (e instanceof Addition) {
+            final Expression[] eTerms = ((Addition) e).terms;
+            System.arraycopy(eTerms, 0, dest, start, eTerms.length);
+            return start + eTerms.length;
+        }
+        dest[start] = e;
+        return start + 1;
+    }
+    private static Expression[] concat(Expression left, Expression right) {
+        final Expression[] flat = new Expression[termCount(left) + termCount(right)];
+        copyTerms(right, flat, copyTerms(left, flat, 0));
+        return flat;
+    }
+    /** @return the number of terms of this sum, at least 2 */
+    public int size() {
+        return terms.length;
+    }
+    /**
+     * @param i index of a term, 0 <= i < size()
+     * @return the i-th term of this sum, read left-to-right
+     */
+    public Expression get(int i) {
+        return terms[i];
+    }
+    @Override public <R> R accept(Visitor<R> visitor) {
+        return visitor.onAddition(this);
+    }
     @Override public Expression addExpr(Expression e) {
-        if (e.equals(new Value(0))) {
+        if (e.isZero()) {
             return this;
         }
-        Value two = new Value(2);
         if (this.equals(e)) {
-            Expression newLeft = this.left.multiplyExpr(two);
-            Expression newRight = this.right.multiplyExpr(two);
+            final Expression[] doubled = new Expression[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                doubled[i] = terms[i].multiplyExpr(Value.TWO);
+            }
 
             checkRep();
-            return new Addition(newLeft, newRight);
+            return Addition.of(doubled);
         }
-        if (this.left.equals(e)) {
-            Expression newLeft = this.left.multiplyExpr(two);
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i].equals(e)) {
+                final Expression[] newTerms = terms.clone();
+                newTerms[i] = terms[i].multiplyExpr(Value.TWO);
 
-            checkRep();
-            return new Addition(newLeft, this.right);
+                checkRep();
+                return Addition.of(newTerms);
+            }
         }
-        if (this.right.equals(e)) {
-            Expression newRight = this.right.multiplyExpr(two);
-
-            checkRep();
-            return new Addition(this.left, newRight);
-        }
-        return new Addition(this, e);
+        return Addition.of(this, e);
     }
     /**
      * Returns the result of combining this and another expression with a multiplication
      * The returned expression is such that:
      *      expression returned = this * e
-     * If e.equals(this), the returned expression is such that:
-     *      this.left*this.left + this.left*this.right + this.right*this.right
      * @param e a non-null Expression
      * @return the product expression of multiplying this
-     *         by e 
+     *         by e
      */
     @Override public Expression multiplyExpr(Expression e) {
-        Value zero = new Value(0);
-        if (e.equals(zero)) {
-            return zero;
+        if (e.isZero()) {
+            return Value.ZERO;
         }
-        if (e.equals(new Value(1))) {
+        if (e.isOne()) {
             return this;
         }
-        return new Multiplication(this, e);
+        return Multiplication.of(this, e);
     }
-    // TODO: have it simplify such that x + x + 3*x = 5*x
-    // Use getCoefficient
+    // Like terms, such as x + x + 3*x = 5*x, are combined by Polynomial
     @Override public Expression addVariable(String variable) {
         assert variable != null && variable != "";
-        
-        return new Addition(new Variable(variable), this);
+
+        return Addition.of(Variable.of(variable), this);
     }
     @Override public Expression multiplyVariable(String variable) {
         assert variable != null && variable != "";
-        
-        return new Multiplication(new Variable(variable), this);
+
+        return Multiplication.of(Variable.of(variable), this);
+    }
+    @Override public void appendTo(StringBuilder builder) {
+        terms[0].appendTo(builder);
+        for (int i = 1; i < terms.length; i++) {
+            builder.append(" + ");
+            terms[i].appendTo(builder);
+        }
     }
     @Override public String toString() {
-        return left.toString()
-               + " + "
-               + right.toString();
+        final StringBuilder builder = new StringBuilder();
+        appendTo(builder);
+        return builder.toString();
     }
     /**
      * Checks if an object is equal to this addition expression
-     * Two expressions are equal if and only if: 
+     * Two expressions are equal if and only if:
      *   - The expressions contain the same variables, numbers, and operators;
      *   - those variables, numbers, and operators are in the same order, read left-to-right;
      *   - and they are grouped in the same way.
-     * Two addition objects are equal if having different groupings with 
-     * the same mathematical meaning. For example, 
+     * Two addition objects are equal if having different groupings with
+     * the same mathematical meaning. For example,
      *     (3 + 4) + 5 and 3 + (4 + 5) are equal.
      * @param thatObject Object to compare equality with
      * @return true if two addition expressions are equal
@@ -114,18 +197,14 @@ public class Addition implements Expression {
             return false;
         }
         Addition thatAdd = (Addition) thatObject;
+        if (this.hash != thatAdd.hash) {
+            return false;
+        }
 
         checkRep();
-        return this.toString().equals(thatAdd.toString());
+        return Arrays.equals(this.terms, thatAdd.terms);
     }
     @Override public int hashCode() {
-        final int prime = 37;
-        int result = 1;
-        
-        result = prime*result + left.hashCode();
-        result = prime*result + right.hashCode();
-
-        checkRep();
-        return result;
+        return hash;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,275 @@
+package expressivo;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import expressivo.parser.ExpressionLexer;
+import expressivo.parser.ExpressionParser;
+
+/**
+ * Parses expressions with the generated ANTLR lexer and parser.
+ *
+ * Each thread keeps one lexer, token stream, parser and MakeExpression,
+ * which are reset and reused for every parse on that thread instead of being
+ * created, and given new error listeners, every time. The token stream keeps
+ * its buffer between parses.
+ *
+ * Like DescentParser, the parser rejects parentheses nested more than
+ * DescentParser.MAX_DEPTH deep, before its recursion can overflow the stack,
+ * so both accept the same language.
+ */
+final class AntlrParser {
+
+    private static final ThreadLocal<AntlrParser> PARSERS = new ThreadLocal<AntlrParser>() {
+        @Override protected AntlrParser initialValue() {
+            return new AntlrParser();
+        }
+    };
+
+    private final ExpressionLexer lexer = new ExpressionLexer(null);
+    private final CommonTokenStream tokens = new CommonTokenStream(lexer) {
+        @Override public void setTokenSource(TokenSource tokenSource) {
+            super.setTokenSource(tokenSource);
+            // ANTLR 4.5.1 forgets to reset this, so a reused stream would stay at EOF
+            fetchedEOF = false;
+        }
+    };
+    private final ExpressionParser parser = new ExpressionParser(tokens);
+    private final MakeExpression exprMaker = new MakeExpression();
+    private final ANTLRErrorListener exprMakerListener = exprMaker.errorListener();
+    private final ANTLRErrorStrategy bailStrategy = exprMaker.bailErrorStrategy();
+    private final ANTLRErrorStrategy recoverStrategy = new DefaultErrorStrategy();
+    private final ANTLRErrorListener lexerThrower;
+    private final ANTLRErrorListener parserThrower;
+    private final ANTLRErrorListener recorder = new Recorder();
+    private final ParseTreeListener depthLimit = new DepthLimit();
+    private int depth = 0;
+    private int errorIndex = -1;
+    private String errorMessage = null;
+    private boolean busy = false;
+
+    /** Type of the '(' token */
+    private static final int OPEN = ExpressionParser.T__2;
+
+    // Abstraction Function
+    //   represents the ANTLR objects a thread parses with; busy is true
+    //   while they are parsing; depth is the number of parenthesised
+    //   primitives being parsed; errorIndex and errorMessage describe the
+    //   first error recorded by recorder in the last parse, if any
+    //
+    // Representation Invariant
+    //   lexerThrower and parserThrower are the listeners installed by
+    //   reportErrorsAsExceptions() on lexer and parser
+    //   0 <= depth <= DescentParser.MAX_DEPTH
+    //   errorIndex == -1 iff errorMessage == null
+    //
+    // Safety From Exposure
+    //   - all fields are private, and never shared with another thread
+
+    private AntlrParser() {
+        lexer.removeErrorListeners();
+        lexer.reportErrorsAsExceptions();
+        lexerThrower = lexer.getErrorListeners().get(0);
+        parser.removeErrorListeners();
+        parser.reportErrorsAsExceptions();
+        parserThrower = parser.getErrorListeners().get(0);
+    }
+
+    /**
+     * Parses with ANTLR in two stages. The faster SLL prediction is tried
+     * first, bailing out at the first error; since SLL can fail on input that
+     * full LL accepts, only then is the input parsed again with full LL
+     * prediction, which also reports the error if the input is invalid.
+     *
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @param streaming true to build the expression while parsing, false to
+     *        build a parse tree and walk it
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    static Expression parse(CharSequence input, boolean streaming) {
+        final AntlrParser antlr = acquire();
+        try {
+            final String text = input.toString();
+            try {
+                return antlr.parse(text, streaming, true, false);
+            } catch (ParseCancellationException sllFailed) {
+                try {
+                    return antlr.parse(text, streaming, false, false);
+                } catch (ParseCancellationException pce) {
+                    throw new IllegalArgumentException("invalid expression: " + input, pce);
+                }
+            }
+        } finally {
+            antlr.release();
+        }
+    }
+
+    /**
+     * Parses with ANTLR in the same two stages as parse(), but reports the
+     * first error of the second stage as a result: the error listeners
+     * record it and unwind the parser with an exception that carries no
+     * stack trace, and nothing is printed.
+     *
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @param streaming true to build the expression while parsing, false to
+     *        build a parse tree and walk it
+     * @return the expression AST for the input, or where and why input is invalid
+     */
+    static ParseResult tryParse(CharSequence input, boolean streaming) {
+        final AntlrParser antlr = acquire();
+        try {
+            final String text = input.toString();
+            try {
+                return ParseResult.success(antlr.parse(text, streaming, true, true));
+            } catch (ParseCancellationException | Failure sllFailed) {
+                try {
+                    return ParseResult.success(antlr.parse(text, streaming, false, true));
+                } catch (Failure failure) {
+                    return ParseResult.failure(antlr.errorIndex, antlr.errorMessage);
+                }
+            }
+        } finally {
+            antlr.release();
+        }
+    }
+
+    /** @return this thread's parser, or a new one if it is already parsing, marked busy */
+    private static AntlrParser acquire() {
+        AntlrParser antlr = PARSERS.get();
+        if (antlr.busy) {
+            // parse called again while parsing on this thread
+            antlr = new AntlrParser();
+        }
+        antlr.busy = true;
+        return antlr;
+    }
+
+    private Expression parse(String input, boolean streaming, boolean sll, boolean recording) {
+        exprMaker.reset();
+        depth = 0;
+        errorIndex = -1;
+        errorMessage = null;
+        // errors of the first stage are reported by the second, if at all
+        final boolean quiet = sll || recording;
+        listen(lexer, quiet, exprMakerListener, recording ? recorder : lexerThrower);
+        listen(parser, quiet, exprMakerListener, recording ? recorder : parserThrower);
+        parser.getInterpreter().setPredictionMode(sll ? PredictionMode.SLL : PredictionMode.LL);
+        parser.setErrorHandler(sll ? bailStrategy : recoverStrategy);
+        parser.setBuildParseTree(!streaming);
+        parser.removeParseListeners();
+        parser.addParseListener(depthLimit);
+        lexer.setInputStream(new ANTLRInputStream(input));
+        if (streaming) {
+            parser.setTokenStream(new UnbufferedTokenStream<>(lexer));
+        } else {
+            tokens.setTokenSource(lexer);
+            parser.setTokenStream(tokens);
+        }
+
+        if (streaming) {
+            parser.addParseListener(exprMaker);
+            parser.root();
+        } else {
+            ParseTree tree = parser.root();
+            new ParseTreeWalker().walk(exprMaker, tree);
+        }
+        return exprMaker.getExpression();
+    }
+
+    private static void listen(Recognizer<?, ?> recognizer, boolean quiet,
+            ANTLRErrorListener exprMakerListener, ANTLRErrorListener thrower) {
+        recognizer.removeErrorListeners();
+        if (!quiet) {
+            recognizer.addErrorListener(ConsoleErrorListener.INSTANCE);
+        }
+        recognizer.addErrorListener(exprMakerListener);
+        recognizer.addErrorListener(thrower);
+    }
+
+    /** Drops every reference to the last input and result, keeping buffers, and marks this idle */
+    private void release() {
+        lexer.setInputStream(null);
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        parser.removeParseListeners();
+        exprMaker.reset();
+        busy = false;
+    }
+
+    /**
+     * Unwinds the parser at the first error, which the recorder records.
+     * Carries no stack trace or message, so one instance serves every parse.
+     */
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1;
+        private static final Failure INSTANCE = new Failure();
+
+        private Failure() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** An error listener recording the first error in errorIndex and errorMessage, then unwinding */
+    private final class Recorder extends BaseErrorListener {
+        @Override public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                int line, int charPositionInLine, String msg, RecognitionException e) {
+            // the parser reports the offending token; the lexer reports none, but
+            // input has a single line, so its position in the line is its index
+            errorIndex = offendingSymbol instanceof Token
+                    ? ((Token) offendingSymbol).getStartIndex() : charPositionInLine;
+            errorMessage = msg;
+            throw Failure.INSTANCE;
+        }
+    }
+
+    /**
+     * A parse listener reporting an error on entering a parenthesised
+     * primitive nested more than DescentParser.MAX_DEPTH deep, at its '('.
+     */
+    private final class DepthLimit implements ParseTreeListener {
+        @Override public void enterEveryRule(ParserRuleContext context) {
+            if (isParenthesised(context)) {
+                if (depth == DescentParser.MAX_DEPTH) {
+                    parser.notifyErrorListeners(context.getStart(),
+                            "parentheses nested more than " + DescentParser.MAX_DEPTH + " deep", null);
+                }
+                depth++;
+            }
+        }
+
+        @Override public void exitEveryRule(ParserRuleContext context) {
+            if (isParenthesised(context)) {
+                depth--;
+            }
+        }
+
+        @Override public void visitTerminal(TerminalNode node) {
+        }
+
+        @Override public void visitErrorNode(ErrorNode node) {
+        }
+
+        private boolean isParenthesised(ParserRuleContext context) {
+            return context.getRuleIndex() == ExpressionParser.RULE_primitive && context.getStart().getType() == OPEN;
+        }
+    }
+}
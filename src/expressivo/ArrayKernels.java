@@ -0,0 +1,80 @@
+package expressivo;
+
+/**
+ * Loops over primitive arrays used by BatchEvaluator.
+ *
+ * Every kernel is a single counted loop with no branches and no calls, reading
+ * and writing arrays at a fixed offset from the loop index. That is the shape
+ * HotSpot's C2 compiler turns into SIMD instructions (SSE, AVX2 or AVX-512,
+ * whichever the processor has), so the kernels run several rows per
+ * instruction without depending on any incubator module.
+ */
+final class ArrayKernels {
+
+    private ArrayKernels() {
+        // not instantiable
+    }
+
+    /** dest[i] = num, for 0 <= i < length */
+    static void fill(double[] dest, int length, double num) {
+        for (int i = 0; i < length; i++) {
+            dest[i] = num;
+        }
+    }
+
+    /** dest[i] += num, for 0 <= i < length */
+    static void add(double[] dest, int length, double num) {
+        for (int i = 0; i < length; i++) {
+            dest[i] += num;
+        }
+    }
+
+    /** dest[i] *= num, for 0 <= i < length */
+    static void multiply(double[] dest, int length, double num) {
+        for (int i = 0; i < length; i++) {
+            dest[i] *= num;
+        }
+    }
+
+    /** dest[i] += src[start + i], for 0 <= i < length */
+    static void add(double[] dest, int length, double[] src, int start) {
+        for (int i = 0; i < length; i++) {
+            dest[i] += src[start + i];
+        }
+    }
+
+    /** dest[i] *= src[start + i], for 0 <= i < length */
+    static void multiply(double[] dest, int length, double[] src, int start) {
+        for (int i = 0; i < length; i++) {
+            dest[i] *= src[start + i];
+        }
+    }
+
+    /** dest[i] = num * a[start + i], for 0 <= i < length */
+    static void scale(double[] dest, int length, double num, double[] a, int start) {
+        for (int i = 0; i < length; i++) {
+            dest[i] = num * a[start + i];
+        }
+    }
+
+    /** dest[i] = num * a[start + i] * b[start + i], for 0 <= i < length */
+    static void scale(double[] dest, int length, double num, double[] a, double[] b, int start) {
+        for (int i = 0; i < length; i++) {
+            dest[i] = num * a[start + i] * b[start + i];
+        }
+    }
+
+    /** dest[i] += num * a[start + i], for 0 <= i < length */
+    static void addScaled(double[] dest, int length, double num, double[] a, int start) {
+        for (int i = 0; i < length; i++) {
+            dest[i] += num * a[start + i];
+        }
+    }
+
+    /** dest[i] += num * a[start + i] * b[start + i], for 0 <= i < length */
+    static void addScaled(double[] dest, int length, double num, double[] a, double[] b, int start) {
+        for (int i = 0; i < length; i++) {
+            dest[i] += num * a[start + i] * b[start + i];
+        }
+    }
+}
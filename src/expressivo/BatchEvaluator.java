@@ -0,0 +1,280 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an expression over many rows of variable bindings at once.
+ *
+ * Each variable is bound to a column of values, one per row. Rows are
+ * processed in chunks: every node of the expression computes its value for
+ * a whole chunk into a scratch buffer, so the cost of walking the tree is
+ * paid once per chunk rather than once per row, and the work per node is a
+ * simple loop over primitive arrays that the JIT can vectorise (see
+ * ArrayKernels). Products of a number and variables, such as 3*x*y, are
+ * computed in one fused pass instead of one pass per factor.
+ */
+public final class BatchEvaluator {
+
+    /** Number of rows evaluated by each pass over the tree */
+    static final int CHUNK = 1024;
+
+    private BatchEvaluator() {
+        // not instantiable
+    }
+
+    /**
+     * Evaluates an expression for every row of a table of bindings
+     *
+     * @param expression the expression to evaluate
+     * @param columns maps every variable of expression to its column, the
+     *        value of the variable in row i being column[i]; each column
+     *        has at least results.length values; not modified
+     * @param results receives the value of expression for row i in
+     *        results[i], for every 0 <= i < results.length, in double
+     *        arithmetic with operands evaluated left to right
+     * @throws IllegalArgumentException if a variable of expression has no
+     *         column, or a column is shorter than results
+     */
+    public static void evaluate(Expression expression, Map<String, double[]> columns, double[] results) {
+        final Planner planner = new Planner(columns, results.length);
+        final Node root = expression.accept(planner);
+        final double[][] scratch = new double[planner.maxDepth + 1][Math.min(CHUNK, results.length)];
+        final double[] buffer = new double[Math.min(CHUNK, results.length)];
+        for (int start = 0; start < results.length; start += CHUNK) {
+            final int length = Math.min(CHUNK, results.length - start);
+            root.eval(start, length, buffer, scratch);
+            System.arraycopy(buffer, 0, results, start, length);
+        }
+    }
+
+    /**
+     * A node of the expression, resolved against the columns.
+     * Nodes at nesting depth d write their operands into scratch[d].
+     */
+    private abstract static class Node {
+        /**
+         * Writes the value of this node for rows start..start+length-1
+         * into dest[0..length-1]
+         */
+        abstract void eval(int start, int length, double[] dest, double[][] scratch);
+
+        /** dest[i] += value of this node for row start+i */
+        void addTo(int start, int length, double[] dest, double[][] scratch, int depth) {
+            final double[] operand = scratch[depth];
+            eval(start, length, operand, scratch);
+            ArrayKernels.add(dest, length, operand, 0);
+        }
+
+        /** dest[i] *= value of this node for row start+i */
+        void multiplyInto(int start, int length, double[] dest, double[][] scratch, int depth) {
+            final double[] operand = scratch[depth];
+            eval(start, length, operand, scratch);
+            ArrayKernels.multiply(dest, length, operand, 0);
+        }
+    }
+
+    private static final class Constant extends Node {
+        private final double num;
+
+        Constant(double num) {
+            this.num = num;
+        }
+
+        @Override void eval(int start, int length, double[] dest, double[][] scratch) {
+            ArrayKernels.fill(dest, length, num);
+        }
+
+        @Override void addTo(int start, int length, double[] dest, double[][] scratch, int depth) {
+            ArrayKernels.add(dest, length, num);
+        }
+
+        @Override void multiplyInto(int start, int length, double[] dest, double[][] scratch, int depth) {
+            ArrayKernels.multiply(dest, length, num);
+        }
+    }
+
+    private static final class Column extends Node {
+        private final double[] column;
+
+        Column(double[] column) {
+            this.column = column;
+        }
+
+        @Override void eval(int start, int length, double[] dest, double[][] scratch) {
+            System.arraycopy(column, start, dest, 0, length);
+        }
+
+        @Override void addTo(int start, int length, double[] dest, double[][] scratch, int depth) {
+            ArrayKernels.add(dest, length, column, start);
+        }
+
+        @Override void multiplyInto(int start, int length, double[] dest, double[][] scratch, int depth) {
+            ArrayKernels.multiply(dest, length, column, start);
+        }
+    }
+
+    /**
+     * A product of a number and one or more columns, num*c0*c1*...,
+     * the shape of every term of a polynomial in canonical form.
+     * Terms of one or two columns are computed in a single fused pass.
+     */
+    private static final class Term extends Node {
+        private final double num;
+        private final double[][] columns;
+
+        Term(double num, double[][] columns) {
+            this.num = num;
+            this.columns = columns;
+        }
+
+        @Override void eval(int start, int length, double[] dest, double[][] scratch) {
+            if (columns.length == 2) {
+                ArrayKernels.scale(dest, length, num, columns[0], columns[1], start);
+                return;
+            }
+            ArrayKernels.scale(dest, length, num, columns[0], start);
+            for (int i = 1; i < columns.length; i++) {
+                ArrayKernels.multiply(dest, length, columns[i], start);
+            }
+        }
+
+        @Override void addTo(int start, int length, double[] dest, double[][] scratch, int depth) {
+            if (columns.length == 1) {
+                ArrayKernels.addScaled(dest, length, num, columns[0], start);
+            } else if (columns.length == 2) {
+                ArrayKernels.addScaled(dest, length, num, columns[0], columns[1], start);
+            } else {
+                super.addTo(start, length, dest, scratch, depth);
+            }
+        }
+    }
+
+    private static final class Sum extends Node {
+        private final Node[] terms;
+        private final int depth;
+
+        Sum(Node[] terms, int depth) {
+            this.terms = terms;
+            this.depth = depth;
+        }
+
+        @Override void eval(int start, int length, double[] dest, double[][] scratch) {
+            terms[0].eval(start, length, dest, scratch);
+            for (int i = 1; i < terms.length; i++) {
+                terms[i].addTo(start, length, dest, scratch, depth);
+            }
+        }
+    }
+
+    private static final class Product extends Node {
+        private final Node[] factors;
+        private final int depth;
+
+        Product(Node[] factors, int depth) {
+            this.factors = factors;
+            this.depth = depth;
+        }
+
+        @Override void eval(int start, int length, double[] dest, double[][] scratch) {
+            factors[0].eval(start, length, dest, scratch);
+            for (int i = 1; i < factors.length; i++) {
+                factors[i].multiplyInto(start, length, dest, scratch, depth);
+            }
+        }
+    }
+
+    /** Resolves the variables of an expression against the columns */
+    private static final class Planner implements Expression.Visitor<Node> {
+        private final Map<String, double[]> columns;
+        private final int rows;
+        private int depth = 0;
+        private int maxDepth = 0;
+
+        Planner(Map<String, double[]> columns, int rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override public Node onValue(Value value) {
+            return new Constant(value.value());
+        }
+
+        @Override public Node onVariable(Variable variable) {
+            final double[] column = columns.get(variable.name());
+            if (column == null) {
+                throw new IllegalArgumentException("no column for variable " + variable);
+            }
+            if (column.length < rows) {
+                throw new IllegalArgumentException("column of " + variable + " is shorter than "
+                        + rows + " rows");
+            }
+            return new Column(column);
+        }
+
+        @Override public Node onAddition(Addition addition) {
+            final List<Expression> terms = new ArrayList<>();
+            for (int i = 0; i < addition.size(); i++) {
+                terms.add(addition.get(i));
+            }
+            final int nodeDepth = depth;
+            return new Sum(operands(terms), nodeDepth);
+        }
+
+        @Override public Node onMultiplication(Multiplication multiplication) {
+            final Node term = termOf(multiplication);
+            if (term != null) {
+                return term;
+            }
+            final List<Expression> factors = new ArrayList<>();
+            for (int i = 0; i < multiplication.size(); i++) {
+                factors.add(multiplication.get(i));
+            }
+            final int nodeDepth = depth;
+            return new Product(operands(factors), nodeDepth);
+        }
+
+        /**
+         * @return a Term computing multiplication, if its first factor is a
+         *         number or variable and every other factor is a variable;
+         *         null otherwise. A leading variable x is computed as 1*x,
+         *         which is exactly x, so results are unchanged.
+         */
+        private Node termOf(Multiplication multiplication) {
+            final Expression first = multiplication.get(0);
+            final boolean leadingNumber = first instanceof Value;
+            if (!leadingNumber && !(first instanceof Variable)) {
+                return null;
+            }
+            final int skip = leadingNumber ? 1 : 0;
+            final double[][] termColumns = new double[multiplication.size() - skip][];
+            for (int i = skip; i < multiplication.size(); i++) {
+                final Expression factor = multiplication.get(i);
+                if (!(factor instanceof Variable)) {
+                    return null;
+                }
+                termColumns[i - skip] = ((Column) factor.accept(this)).column;
+            }
+            final double num = leadingNumber ? ((Value) first).value() : 1;
+            return new Term(num, termColumns);
+        }
+
+        /**
+         * Plans the operands of a node at the current depth. The first operand
+         * writes straight into the node's destination, so it stays at this
+         * depth; the others use scratch[depth] and nest one level deeper.
+         */
+        private Node[] operands(List<Expression> expressions) {
+            final Node[] nodes = new Node[expressions.size()];
+            nodes[0] = expressions.get(0).accept(this);
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+            for (int i = 1; i < nodes.length; i++) {
+                nodes[i] = expressions.get(i).accept(this);
+            }
+            depth--;
+            return nodes;
+        }
+    }
+}
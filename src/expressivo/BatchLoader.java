@@ -0,0 +1,91 @@
+package expressivo;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Parses files of expressions, one expression per line.
+ *
+ * The file is memory-mapped, a window at a time, and lines are found and
+ * parsed directly in the mapped bytes: the file is never copied into a
+ * stream buffer and no line becomes a String.
+ */
+public final class BatchLoader {
+
+    /** Size of the part of a file mapped at once */
+    static final int WINDOW_SIZE = 1 << 28;
+
+    private BatchLoader() {
+        // not instantiable
+    }
+
+    /**
+     * Parses every line of a file of expressions
+     *
+     * @param file a file of ASCII text, holding one expression per line, lines
+     *        being terminated by "\n" or "\r\n"; the last line may be unterminated
+     * @param consumer is given the result of parsing each line, valid or not,
+     *        with its line number, counting from 1, in file order; a file
+     *        ending with a line terminator has no empty line after it
+     * @return the number of lines parsed
+     * @throws IOException if the file cannot be read, or a line is longer
+     *         than Integer.MAX_VALUE bytes
+     */
+    public static long load(Path file, ObjLongConsumer<ParseResult> consumer) throws IOException {
+        return load(file, consumer, WINDOW_SIZE);
+    }
+
+    /**
+     * As load(file, consumer), mapping at most windowSize bytes at once
+     * unless a line is longer than that
+     */
+    static long load(Path file, ObjLongConsumer<ParseResult> consumer, int windowSize) throws IOException {
+        long lines = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long windowStart = 0;
+            int mapped = windowSize;
+            while (windowStart < size) {
+                final int length = (int) Math.min(mapped, size - windowStart);
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+                final boolean last = windowStart + length == size;
+
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (window.get(i) == '\n') {
+                        consumer.accept(parseLine(window, lineStart, i), ++lines);
+                        lineStart = i + 1;
+                    }
+                }
+                if (last) {
+                    if (lineStart < length) {
+                        consumer.accept(parseLine(window, lineStart, length), ++lines);
+                    }
+                    break;
+                }
+                if (lineStart == 0) {
+                    // a line longer than the window: map more of it at once
+                    if (mapped == Integer.MAX_VALUE) {
+                        throw new IOException("line " + (lines + 1) + " of " + file + " is too long");
+                    }
+                    mapped = (int) Math.min(2L * mapped, Integer.MAX_VALUE);
+                } else {
+                    // the unterminated line at the end is scanned again in the next window
+                    windowStart += lineStart;
+                    mapped = windowSize;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /** @return the result of parsing the line window[start..end-1], without its "\r" if any */
+    private static ParseResult parseLine(MappedByteBuffer window, int start, int end) {
+        final boolean crlf = end > start && window.get(end - 1) == '\r';
+        return DescentParser.tryParse(window, start, crlf ? end - 1 : end);
+    }
+}
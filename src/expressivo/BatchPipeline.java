@@ -0,0 +1,120 @@
+package expressivo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs lines of the console command language in parallel, with the same
+ * output as running them one after another in a Session.
+ *
+ * Three stages run at once: the calling thread reads lines, a pool of
+ * workers runs them, and a writer thread writes their outputs in input order.
+ * Expressions do not depend on earlier lines and run as soon as a worker is
+ * free; a command depends only on the current expression, so it is chained
+ * after the line that last set it.
+ */
+final class BatchPipeline {
+
+    /** Lines read ahead of the writer, per worker */
+    private static final int LINES_PER_WORKER = 256;
+
+    /** Marks the end of the input in the queue of pending lines */
+    private static final CompletableFuture<Session.Step> END = new CompletableFuture<>();
+
+    private BatchPipeline() {
+        // not instantiable
+    }
+
+    /**
+     * Runs every line of in, writing the outputs to out
+     * @param in input lines; empty lines are skipped
+     * @param out receives one output line per non-empty input line, in input
+     *        order, exactly as Main.runBatch would write; flushed whenever no
+     *        more lines have been read, and at the end
+     * @param workers number of threads running lines, >= 1
+     * @throws IOException if there is an error reading in or writing out
+     */
+    static void run(BufferedReader in, Writer out, int workers) throws IOException {
+        final ExecutorService pool = Executors.newFixedThreadPool(workers);
+        final ExecutorService writerThread = Executors.newSingleThreadExecutor();
+        final BlockingQueue<CompletableFuture<Session.Step>> pending =
+                new ArrayBlockingQueue<>(LINES_PER_WORKER * workers);
+        try {
+            final Future<Void> writer = writerThread.submit(() -> write(pending, out));
+
+            CompletableFuture<Optional<String>> current = CompletableFuture.completedFuture(Optional.empty());
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final String input = line;
+                final CompletableFuture<Session.Step> step;
+                if (Session.isCommand(input)) {
+                    step = current.thenApplyAsync(before -> Session.step(before, input), pool);
+                    current = step.thenApply(after -> after.current);
+                } else {
+                    step = CompletableFuture.supplyAsync(() -> Session.step(Optional.empty(), input), pool);
+                    current = step.thenCombine(current,
+                            (parsed, before) -> parsed.current.isPresent() ? parsed.current : before);
+                }
+                enqueue(pending, step, writer);
+            }
+            enqueue(pending, END, writer);
+            writer.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IllegalStateException(ee.getCause());
+        } finally {
+            pool.shutdownNow();
+            writerThread.shutdownNow();
+        }
+    }
+
+    /** Adds a line to the queue, waiting for room unless the writer has stopped */
+    private static void enqueue(BlockingQueue<CompletableFuture<Session.Step>> pending,
+            CompletableFuture<Session.Step> step, Future<Void> writer)
+            throws InterruptedException, ExecutionException {
+        while (!pending.offer(step, 100, TimeUnit.MILLISECONDS)) {
+            if (writer.isDone()) {
+                // the writer failed: report its exception
+                writer.get();
+            }
+        }
+    }
+
+    /** The writer stage: writes the output of each line in queue order, until END */
+    private static Void write(BlockingQueue<CompletableFuture<Session.Step>> pending, Writer out)
+            throws IOException, InterruptedException {
+        for (CompletableFuture<Session.Step> step = pending.take(); step != END; step = pending.take()) {
+            final Session.Step done;
+            try {
+                done = step.get();
+            } catch (ExecutionException ee) {
+                throw new IllegalStateException(ee.getCause());
+            }
+            out.write(done.output);
+            out.write(System.lineSeparator());
+            if (pending.isEmpty()) {
+                // the reader is waiting for input, so let whoever reads our output catch up
+                out.flush();
+            }
+        }
+        out.flush();
+        return null;
+    }
+}
@@ -0,0 +1,212 @@
+package expressivo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe map bounded both in number of entries and in approximate
+ * memory retained, evicting the least recently used entries first, and
+ * counting its hits, misses and evictions.
+ *
+ * The map is divided into segments by hash of the key, each with its own
+ * lock and an equal share of the bounds, so threads looking up different
+ * keys rarely wait for each other; recency is therefore only kept within
+ * a segment.
+ *
+ * @param <K> type of keys, immutable
+ * @param <V> type of values, immutable
+ */
+final class BoundedCache<K, V> {
+
+    /** Number of segments, and the least bound on entries */
+    static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Abstraction Function
+    //   represents the map that is the union of the maps of segments, together
+    //   with counts of lookups that found an entry (hits), lookups that did
+    //   not (misses), and entries evicted (evictions)
+    //
+    // Representation Invariant
+    //   segments.length == SEGMENTS, and key is in segments[i] only if
+    //     i == segmentOf(key)
+    //
+    // Safety From Exposure
+    //   - all fields are private and never returned; keys and values are immutable
+
+    /**
+     * Make an empty cache.
+     * @param maxEntries bound on the number of entries, >= SEGMENTS
+     * @param maxBytes bound on the approximate bytes retained by entries, > 0
+     * @throws IllegalArgumentException if a bound is too small
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BoundedCache(int maxEntries, long maxBytes) {
+        if (maxEntries < SEGMENTS || maxBytes <= 0) {
+            throw new IllegalArgumentException("bounds too small: " + maxEntries + " entries, " + maxBytes + " bytes");
+        }
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(maxEntries / SEGMENTS, maxBytes / SEGMENTS);
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert segments.length == SEGMENTS;
+    }
+
+    /**
+     * Look up a key, counting a hit if it is cached and a miss otherwise,
+     * and making it the most recently used entry of its segment.
+     * @param key key to look up
+     * @return the value cached for key, or null if none
+     */
+    V get(K key) {
+        final Segment<K, V> segment = segments[segmentOf(key)];
+        final V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    /**
+     * Cache a value, unless its key is already cached or it is too big to
+     * fit its segment's share of the bounds, evicting least recently used
+     * entries until within the bounds.
+     * @param key key to cache
+     * @param value non-null value for key
+     * @param bytes approximate bytes retained by the entry, > 0
+     */
+    void put(K key, V value, long bytes) {
+        final Segment<K, V> segment = segments[segmentOf(key)];
+        synchronized (segment) {
+            if (bytes <= segment.maxBytes && !segment.containsKey(key)) {
+                segment.put(key, value, bytes);
+                evictions.add(segment.trim());
+            }
+        }
+    }
+
+    /** @return the number of lookups that found their key cached */
+    long hits() {
+        return hits.sum();
+    }
+
+    /** @return the number of lookups that did not find their key cached */
+    long misses() {
+        return misses.sum();
+    }
+
+    /** @return the number of entries evicted to stay within the bounds */
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /** @return the number of entries cached */
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /** Remove every entry, leaving the counts unchanged */
+    void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return size() + " entries, " + hits() + " hits, " + misses() + " misses, " + evictions() + " evictions";
+    }
+
+    private static int segmentOf(Object key) {
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (SEGMENTS - 1);
+    }
+
+    /** A value cached with the bytes it retains */
+    private static final class Entry<V> {
+        final V value;
+        final long bytes;
+
+        Entry(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    /** One segment of the cache: a map in access order, guarded by its own lock */
+    private static final class Segment<K, V> {
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxBytes;
+        private long bytes = 0;
+
+        // Abstraction Function
+        //   represents the map from each key of entries to its value,
+        //   iterating from the least to the most recently used entry
+        //
+        // Representation Invariant
+        //   bytes == sum of the bytes of the values of entries
+        //   after trim(), entries.size() <= maxEntries and bytes <= maxBytes
+        //
+        // Safety From Exposure
+        //   - a Segment is never exposed outside BoundedCache
+
+        Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        V get(K key) {
+            final Entry<V> entry = entries.get(key);
+            return entry == null ? null : entry.value;
+        }
+
+        boolean containsKey(K key) {
+            return entries.containsKey(key);
+        }
+
+        void put(K key, V value, long bytes) {
+            entries.put(key, new Entry<>(value, bytes));
+            this.bytes += bytes;
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        void clear() {
+            entries.clear();
+            bytes = 0;
+        }
+
+        /** Evict least recently used entries until within bounds; @return how many were evicted */
+        int trim() {
+            int evicted = 0;
+            final Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().getValue().bytes;
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Applies a command to a list of expressions in parallel, by fork-join.
+ *
+ * The cost of a command grows with the length of its expression, so the
+ * list is split by total length rather than by count: a range is split in
+ * two halves of about equal length until it is short enough to run on one
+ * thread, so one huge expression and thousands of small ones are both
+ * shared out evenly.
+ */
+final class BulkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1;
+
+    /** Total expression length below which a range runs on one thread */
+    static final long SEQUENTIAL_LENGTH = 1 << 14;
+
+    private final String[] expressions;
+    private final long[] ends;
+    private final UnaryOperator<String> command;
+    private final String[] results;
+    private final int start;
+    private final int end;
+
+    // Abstraction Function
+    //   represents applying command to expressions[start..end-1], storing
+    //   the result for expressions[i] in results[i]
+    //
+    // Representation Invariant
+    //   ends[i] is the total length of expressions[0..i], counting one more per expression
+    //   0 <= start < end <= expressions.length == ends.length == results.length
+    //
+    // Safety From Exposure
+    //   - all fields are private; the arrays are shared only between the
+    //     tasks of one run, which write disjoint elements of results
+
+    private BulkTask(String[] expressions, long[] ends, UnaryOperator<String> command,
+            String[] results, int start, int end) {
+        this.expressions = expressions;
+        this.ends = ends;
+        this.command = command;
+        this.results = results;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @param expressions the expressions to run command on; not modified
+     * @param command the command, safe to apply concurrently
+     * @param parallelism the number of threads to use, >= 1, or 0 to use the
+     *        common fork-join pool
+     * @return the result of command for each of expressions, in the same order
+     * @throws RuntimeException the exception command threw for one of expressions,
+     *         if it threw for any
+     */
+    static List<String> run(List<String> expressions, UnaryOperator<String> command, int parallelism) {
+        final String[] inputs = expressions.toArray(new String[expressions.size()]);
+        final String[] results = new String[inputs.length];
+        if (results.length == 0) {
+            return Arrays.asList(results);
+        }
+        final long[] ends = new long[inputs.length];
+        long total = 0;
+        for (int i = 0; i < ends.length; i++) {
+            total += inputs[i].length() + 1;
+            ends[i] = total;
+        }
+        final BulkTask task = new BulkTask(inputs, ends, command, results, 0, results.length);
+        if (parallelism == 0) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    @Override protected void compute() {
+        final long before = start == 0 ? 0 : ends[start - 1];
+        final long length = ends[end - 1] - before;
+        if (end - start == 1 || length <= SEQUENTIAL_LENGTH) {
+            for (int i = start; i < end; i++) {
+                results[i] = command.apply(expressions[i]);
+            }
+            return;
+        }
+        // the first index whose end passes the middle of the range, keeping both halves nonempty
+        int middle = Arrays.binarySearch(ends, start, end, before + length / 2);
+        middle = middle >= 0 ? middle + 1 : -middle - 1;
+        middle = Math.max(start + 1, Math.min(end - 1, middle));
+        invokeAll(new BulkTask(expressions, ends, command, results, start, middle),
+                new BulkTask(expressions, ends, command, results, middle, end));
+    }
+}
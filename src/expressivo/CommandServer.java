@@ -0,0 +1,123 @@
+package expressivo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A server for the console command language on a local TCP port.
+ *
+ * Each connection is a session of its own, with its own current expression:
+ * the client sends lines as it would type them at the console, and receives
+ * one output line per non-empty line, exactly as in batch mode. Connections
+ * run on virtual threads where the Java runtime has them, so that thousands
+ * of idle clients cost little, and on a cached pool of threads otherwise.
+ */
+final class CommandServer implements Closeable {
+
+    /** Connections waiting to be accepted before more are refused */
+    private static final int BACKLOG = 1024;
+
+    private final ServerSocket listener;
+    private final ExecutorService connections;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+
+    // Abstraction Function
+    //   represents a server accepting connections on listener, running each
+    //   on connections; open is the set of connections still running
+    //
+    // Representation Invariant
+    //   listener is bound to the loopback address
+    //
+    // Safety From Exposure
+    //   - all fields are private and never returned
+
+    /**
+     * Make a server listening on the loopback address, not yet accepting connections
+     * @param port port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    CommandServer(int port) throws IOException {
+        this.listener = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.connections = newConnectionExecutor();
+    }
+
+    /** @return the port this server listens on */
+    int port() {
+        return listener.getLocalPort();
+    }
+
+    /**
+     * Accept and run connections until this server is closed
+     * @throws IOException if there is an error accepting a connection
+     */
+    void serve() throws IOException {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = listener.accept();
+            } catch (SocketException se) {
+                if (listener.isClosed()) {
+                    return;
+                }
+                throw se;
+            }
+            open.add(socket);
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    /** Stop accepting connections, and close every open connection */
+    @Override public void close() throws IOException {
+        listener.close();
+        for (Socket socket : open) {
+            socket.close();
+        }
+        connections.shutdown();
+    }
+
+    /** Runs one connection as a batch, until the client closes it */
+    private void handle(Socket socket) {
+        try (Socket connection = socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            Main.runBatch(in, out);
+        } catch (IOException ioe) {
+            // the client went away, or the server was closed: nothing to report it to
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task if the runtime
+     *         has them, otherwise a cached pool of daemon threads
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            // Java 21 and later; looked up reflectively so the code still runs on Java 8
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(task -> {
+                final Thread thread = new Thread(task, "expressivo-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -3,7 +3,9 @@
  */
 package expressivo;
 
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * String-based commands provided by the expression system.
@@ -24,7 +26,108 @@ public class Commands {
      * @throws IllegalArgumentException if the expression or variable is invalid
      */
     public static String differentiate(String expression, String variable) {
-        throw new RuntimeException("unimplemented");
+        checkVariable(variable);
+        final Expression parsed = ParseCache.shared().parse(expression).expression();
+        return DerivativeCache.shared().differentiate(parsed, variable).toString();
+    }
+
+    /**
+     * Differentiate many expressions with respect to a variable, in parallel on the common
+     * fork-join pool.
+     * @param expressions the expressions to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters.
+     * @return the list of differentiate(e, variable) for each expression e, in the same order
+     * @throws IllegalArgumentException if the variable or any expression is invalid
+     */
+    public static List<String> differentiateAll(List<String> expressions, String variable) {
+        return differentiateAll(expressions, variable, 0);
+    }
+
+    /**
+     * Differentiate many expressions with respect to a variable, in parallel.
+     * @param expressions the expressions to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters.
+     * @param parallelism the number of threads to use, or 0 to use the common fork-join pool
+     * @return the list of differentiate(e, variable) for each expression e, in the same order
+     * @throws IllegalArgumentException if the variable or any expression is invalid
+     */
+    public static List<String> differentiateAll(List<String> expressions, String variable, int parallelism) {
+        checkVariable(variable);
+        return BulkTask.run(expressions, expression -> differentiate(expression, variable), parallelism);
+    }
+
+    /**
+     * Evaluate the derivative of an expression with respect to a variable, at a point.
+     * @param expression the expression to differentiate
+     * @param variable the variable to differentiate by, a case-sensitive nonempty string of letters.
+     * @param environment maps every variable of expression to its value.  Not modified.
+     * @return the number that differentiate(expression, variable) simplifies to under environment,
+     *         evaluated in double arithmetic
+     * @throws IllegalArgumentException if the expression or variable is invalid, or a variable
+     *         of the expression is not in environment
+     */
+    public static double differentiateAt(String expression, String variable, Map<String,Double> environment) {
+        checkVariable(variable);
+        final double[] result = new double[2];
+        DualEvaluator.evaluate(ParseCache.shared().parse(expression).expression(), variable, environment, result);
+        return result[1];
+    }
+
+    /**
+     * Differentiate an expression with respect to each of its variables, in one pass over it.
+     * @param expression the expression to differentiate
+     * @return map from each variable of expression to differentiate(expression, variable),
+     *         iterating in order of variable name; empty if expression has no variables
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static Map<String,String> gradient(String expression) {
+        final Expression parsed = ParseCache.shared().parse(expression).expression();
+        final Map<String,String> gradient = new TreeMap<>();
+        Gradient.of(parsed).forEach((variable, partial) -> gradient.put(variable, partial.toString()));
+        return gradient;
+    }
+
+    /**
+     * Evaluate the partial derivatives of an expression with respect to each of its variables,
+     * at a point.
+     * @param expression the expression to differentiate
+     * @param environment maps every variable of expression to its value.  Not modified.
+     * @return map from each variable v of expression to differentiateAt(expression, v, environment),
+     *         iterating in order of variable name; empty if expression has no variables
+     * @throws IllegalArgumentException if the expression is invalid, or a variable of the
+     *         expression is not in environment
+     */
+    public static Map<String,Double> gradientAt(String expression, Map<String,Double> environment) {
+        final Expression parsed = ParseCache.shared().parse(expression).expression();
+        final List<String> variables = ExpressionCompiler.variables(parsed);
+        final double[] point = new double[variables.size()];
+        for (int i = 0; i < point.length; i++) {
+            final Double value = environment.get(variables.get(i));
+            if (value == null) {
+                throw new IllegalArgumentException("no value for variable " + variables.get(i));
+            }
+            point[i] = value;
+        }
+        final double[] partials = new double[point.length];
+        GradientTape.compile(parsed, variables).gradient(point, partials);
+        final Map<String,Double> gradient = new TreeMap<>();
+        for (int i = 0; i < partials.length; i++) {
+            gradient.put(variables.get(i), partials[i]);
+        }
+        return gradient;
+    }
+
+    /** @throws IllegalArgumentException unless variable is a nonempty string of letters */
+    private static void checkVariable(String variable) {
+        if (variable.isEmpty()) {
+            throw new IllegalArgumentException("invalid variable: empty");
+        }
+        for (int i = 0; i < variable.length(); i++) {
+            final char c = variable.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                throw new IllegalArgumentException("invalid variable: " + variable);
+            }
+        }
     }
     
     /**
@@ -36,11 +139,53 @@ public class Commands {
      * @return an expression equal to the input, but after substituting every variable v that appears in both
      *         the expression and the environment with its value, environment.get(v).  If there are no
      *         variables left in this expression after substitution, it must be evaluated to a single number.
-     *         Additional simplifications to the expression may be done at the implementor's discretion.
+     *         Additional simplifications to the expression may be done at the implementor's discretion:
+     *         the result is in canonical polynomial form, with products expanded, like terms combined
+     *         and terms ordered by decreasing degree, e.g. x*(x + 1) + x simplifies to (x)*(x) + (2)*(x).
      * @throws IllegalArgumentException if the expression is invalid
      */
     public static String simplify(String expression, Map<String,Double> environment) {
-        throw new RuntimeException("unimplemented");
+        final Expression parsed = ParseCache.shared().parse(expression).expression();
+        return Polynomial.of(parsed, environment).toExpression().toString();
     }
-    
+
+    /**
+     * Simplify many expressions under one environment, in parallel on the common fork-join pool.
+     * @param expressions the expressions to simplify
+     * @param environment maps variables to values, as for simplify.  Not modified.
+     * @return the list of simplify(e, environment) for each expression e, in the same order
+     * @throws IllegalArgumentException if any expression is invalid
+     */
+    public static List<String> simplifyAll(List<String> expressions, Map<String,Double> environment) {
+        return simplifyAll(expressions, environment, 0);
+    }
+
+    /**
+     * Simplify many expressions under one environment, in parallel.
+     * @param expressions the expressions to simplify
+     * @param environment maps variables to values, as for simplify.  Not modified.
+     * @param parallelism the number of threads to use, or 0 to use the common fork-join pool
+     * @return the list of simplify(e, environment) for each expression e, in the same order
+     * @throws IllegalArgumentException if any expression is invalid
+     */
+    public static List<String> simplifyAll(List<String> expressions, Map<String,Double> environment,
+            int parallelism) {
+        return BulkTask.run(expressions, expression -> simplify(expression, environment), parallelism);
+    }
+
+    /**
+     * Simplify an expression under many environments at once, every variable being bound.
+     * @param expression the expression to simplify
+     * @param columns maps every variable of expression to a column of nonnegative values, the
+     *         i-th environment binding each variable v to columns.get(v)[i].  Each column has at
+     *         least results.length values.  Columns are not modified.
+     * @param results receives in results[i] the number that expression simplifies to under the
+     *         i-th environment, for every 0 <= i < results.length, evaluated in double arithmetic
+     * @throws IllegalArgumentException if the expression is invalid, one of its variables has no
+     *         column, or a column is too short
+     */
+    public static void simplifyBatch(String expression, Map<String,double[]> columns, double[] results) {
+        BatchEvaluator.evaluate(ParseCache.shared().parse(expression).expression(), columns, results);
+    }
+
 }
@@ -0,0 +1,21 @@
+package expressivo;
+
+/**
+ * An expression compiled to a function of its variables, for fast
+ * repeated evaluation.
+ *
+ * @see ExpressionCompiler
+ */
+public interface CompiledExpression {
+
+    /**
+     * Evaluates the compiled expression
+     *
+     * @param vars the values of the variables of the expression, each
+     *        variable being read from the slot it was assigned when
+     *        compiled; not modified
+     * @return the value of the expression, in double arithmetic, with
+     *         its operands evaluated left to right
+     */
+    public double eval(double[] vars);
+}
@@ -0,0 +1,130 @@
+package expressivo;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Formats nonnegative numbers the way expressions print them: truncated
+ * (not rounded) to 5 decimal places, without trailing zeros or grouping,
+ * e.g. 2.000009 -> "2", 3.1400 -> "3.14".
+ *
+ * The output is the same as a DecimalFormat("###.#####") with
+ * RoundingMode.DOWN, but digits are written straight into the caller's
+ * buffer and no formatter, string or boxed number is created, except for
+ * numbers of about 7e10 or more, which are rare and take a slower path.
+ */
+final class DecimalFormatter {
+
+    /** Number of decimal places kept */
+    static final int DECIMALS = 5;
+
+    private static final long SCALE = 100_000;
+
+    // Below EXACT_LIMIT, doubles are less than 10^-5 apart and num*10^5
+    // is below 2^53, so the truncated decimal is the integer num*10^5 and
+    // dividing it back by 10^5 gives exactly the double nearest to it.
+    // Between EXACT_LIMIT and LIMIT the truncated decimal is still stored
+    // as the integer num*10^5, at most 10^18, but computed through
+    // BigDecimal. At or above LIMIT, a double has at most 3 decimal places,
+    // so no two numbers print alike and the bits of the double itself are
+    // used; bit patterns of such numbers are all greater than 10^18.
+    private static final double EXACT_LIMIT = 1L << 36;
+    private static final double LIMIT = 1e13;
+
+    private DecimalFormatter() {
+        // not instantiable
+    }
+
+    /**
+     * Quantizes a number to 5 decimal places
+     *
+     * @param num a nonnegative finite number
+     * @return a key such that for all nonnegative finite a, b:
+     *         key(a) == key(b) iff a and b are formatted alike
+     */
+    static long key(double num) {
+        assert num >= 0 && Double.isFinite(num);
+        if (num >= LIMIT) {
+            return Double.doubleToLongBits(num);
+        }
+        if (num >= EXACT_LIMIT) {
+            return truncated(num).unscaledValue().longValue();
+        }
+        long scaled = (long) (num * SCALE);
+        // num*10^5 may land just below or above an integer; compare the
+        // decimals themselves, as a shortest-representation formatter would
+        if (scaled / (double) SCALE > num) {
+            scaled--;
+        } else if ((scaled + 1) / (double) SCALE <= num) {
+            scaled++;
+        }
+        return scaled;
+    }
+
+    /**
+     * Appends a number, truncated to 5 decimal places, to a string builder
+     *
+     * @param num a nonnegative finite number
+     * @param out builder to append to
+     */
+    static void format(double num, StringBuilder out) {
+        try {
+            format(num, (Appendable) out);
+        } catch (IOException ioe) {
+            throw new AssertionError("StringBuilder does not throw IOException", ioe);
+        }
+    }
+
+    /**
+     * Appends a number, truncated to 5 decimal places, to an appendable
+     *
+     * @param num a nonnegative finite number
+     * @param out destination to append to
+     * @throws IOException if out fails to append
+     */
+    static void format(double num, Appendable out) throws IOException {
+        if (num >= LIMIT) {
+            out.append(truncated(num).stripTrailingZeros().toPlainString());
+            return;
+        }
+        final long key = key(num);
+        appendDigits(key / SCALE, out);
+        long fraction = key % SCALE;
+        if (fraction == 0) {
+            return;
+        }
+        int length = DECIMALS;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            length--;
+        }
+        out.append('.');
+        for (long place = pow10(length - 1); place > 0; place /= 10) {
+            out.append((char) ('0' + fraction / place % 10));
+        }
+    }
+
+    private static void appendDigits(long n, Appendable out) throws IOException {
+        long place = 1;
+        while (place <= n / 10) {
+            place *= 10;
+        }
+        for (; place > 0; place /= 10) {
+            out.append((char) ('0' + n / place % 10));
+        }
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    /** @return num truncated to 5 decimal places, from its shortest decimal representation */
+    private static BigDecimal truncated(double num) {
+        return BigDecimal.valueOf(num).setScale(DECIMALS, RoundingMode.DOWN);
+    }
+}
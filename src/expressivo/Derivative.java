@@ -0,0 +1,110 @@
+package expressivo;
+
+/**
+ * Differentiates expressions with respect to one variable.
+ *
+ * The derivative is built by the sum and product rules, combining terms with
+ * addExpr and multiplyExpr so that terms multiplied by 0 or 1 are dropped
+ * or left unmultiplied; it is otherwise not simplified. Given a memo table,
+ * the derivative of every sum and product is looked up before it is built,
+ * and remembered after.
+ */
+final class Derivative implements Expression.Visitor<Expression> {
+    private final String variable;
+    private final DerivativeCache memo;
+
+    // Abstraction Function
+    //   represents the operation d/d(variable), remembering derivatives in
+    //   memo if it is non-null
+    //
+    // Representation Invariant
+    //   variable is a nonempty string of letters, a-zA-Z
+    //
+    // Safety From Exposure
+    //   - variable is private, final and immutable
+    //   - memo is private and final, and never returned
+
+    private Derivative(String variable, DerivativeCache memo) {
+        this.variable = variable;
+        this.memo = memo;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert variable.matches("[a-zA-Z]+");
+    }
+
+    /**
+     * @param expression the expression to differentiate
+     * @param variable non-null non-empty case-sensitive string of letters, a-zA-Z
+     * @return the derivative of expression with respect to variable
+     */
+    static Expression of(Expression expression, String variable) {
+        return expression.accept(new Derivative(variable, null));
+    }
+
+    /**
+     * @param expression the expression to differentiate
+     * @param variable non-null non-empty case-sensitive string of letters, a-zA-Z
+     * @param memo table to look up and remember the derivatives of sums and products in
+     * @return the derivative of expression with respect to variable
+     */
+    static Expression of(Expression expression, String variable, DerivativeCache memo) {
+        return expression.accept(new Derivative(variable, memo));
+    }
+
+    @Override public Expression onValue(Value value) {
+        return Value.ZERO;
+    }
+
+    @Override public Expression onVariable(Variable var) {
+        return var.name().equals(variable) ? Value.ONE : Value.ZERO;
+    }
+
+    /** d(u + v + ...) = du + dv + ... */
+    @Override public Expression onAddition(Addition addition) {
+        final Expression cached = recall(addition);
+        if (cached != null) {
+            return cached;
+        }
+        Expression result = addition.get(0).accept(this);
+        for (int i = 1; i < addition.size(); i++) {
+            result = result.addExpr(addition.get(i).accept(this));
+        }
+        return remember(addition, result, addition.size() - 1);
+    }
+
+    /**
+     * d(u*v) = du*v + u*dv, applied to the factors from left to right as they
+     * are grouped: with p the product of the first k factors, d(p*f) = dp*f + p*df
+     */
+    @Override public Expression onMultiplication(Multiplication multiplication) {
+        final Expression cached = recall(multiplication);
+        if (cached != null) {
+            return cached;
+        }
+        Expression product = multiplication.get(0);
+        Expression derivative = product.accept(this);
+        for (int i = 1; i < multiplication.size(); i++) {
+            final Expression factor = multiplication.get(i);
+            derivative = derivative.multiplyExpr(factor)
+                    .addExpr(product.multiplyExpr(factor.accept(this)));
+            product = Multiplication.of(product, factor);
+        }
+        // each factor builds two products, a sum and the next prefix product
+        return remember(multiplication, derivative, 4 * (multiplication.size() - 1));
+    }
+
+    /** @return the derivative of expression remembered in memo, or null if none */
+    private Expression recall(Expression expression) {
+        return memo == null ? null : memo.get(expression, variable);
+    }
+
+    /** @return derivative, after remembering it in memo as built from the given number of new nodes */
+    private Expression remember(Expression expression, Expression derivative, int nodes) {
+        if (memo != null) {
+            memo.put(expression, variable, derivative, nodes);
+        }
+        return derivative;
+    }
+}
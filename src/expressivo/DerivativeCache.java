@@ -0,0 +1,151 @@
+package expressivo;
+
+/**
+ * A thread-safe memo table of derivatives, keyed by expression and variable,
+ * bounded both in number of entries and in approximate memory retained, and
+ * evicting the least recently used entries first.
+ *
+ * Every sum and product differentiated through the cache is remembered, not
+ * just the whole expression, so differentiating f and then f + g only
+ * differentiates g when f is not a sum. Sums are flattened, so when f is a
+ * sum, f + g does not contain the node f but only its terms: the derivatives
+ * of its terms are reused, but their sum is built again, at the cost of one
+ * addExpr per term. Expressions are hash-consed, so structurally equal
+ * subtrees anywhere share entries; numbers and variables are cheap to
+ * differentiate and are not cached.
+ */
+public final class DerivativeCache {
+
+    /** Default bound on the number of entries of the shared cache */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+    /** Default bound on the approximate bytes retained by the shared cache */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /** Approximate bytes retained per entry, besides the nodes of its derivative */
+    private static final long ENTRY_BYTES = 128;
+
+    /** Approximate bytes retained per node of a derivative */
+    private static final long NODE_BYTES = 48;
+
+    private static final DerivativeCache SHARED = new DerivativeCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+    private final BoundedCache<Key, Expression> cache;
+
+    // Abstraction Function
+    //   represents the map from (expression, variable) to the derivative of
+    //   expression with respect to variable held by cache, expressions being
+    //   compared by identity: canonical nodes are identical exactly when
+    //   their structure and numbers are
+    //
+    // Representation Invariant
+    //   every entry (key, derivative) of cache has derivative equal to
+    //     key.expression.differentiate(key.variable)
+    //
+    // Safety From Exposure
+    //   - cache is private and never returned; expressions are immutable
+
+    /**
+     * Make an empty cache.
+     * @param maxEntries bound on the number of entries, >= 16
+     * @param maxBytes bound on the approximate bytes retained by entries, > 0;
+     *        the nodes of a derivative shared with the derivatives of its
+     *        subexpressions are only counted once
+     * @throws IllegalArgumentException if a bound is too small
+     */
+    public DerivativeCache(int maxEntries, long maxBytes) {
+        this.cache = new BoundedCache<>(maxEntries, maxBytes);
+    }
+
+    /** @return the cache shared by Commands */
+    public static DerivativeCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Differentiate an expression, reusing the derivatives of any of its sums
+     * and products differentiated before, and remembering the rest.
+     * @param expression the expression to differentiate
+     * @param variable non-null non-empty case-sensitive string of letters, a-zA-Z
+     * @return the same derivative as expression.differentiate(variable)
+     */
+    public Expression differentiate(Expression expression, String variable) {
+        return Derivative.of(expression, variable, this);
+    }
+
+    /** @return the number of lookups that found their derivative cached */
+    public long hits() {
+        return cache.hits();
+    }
+
+    /** @return the number of lookups that had to differentiate */
+    public long misses() {
+        return cache.misses();
+    }
+
+    /** @return the number of entries evicted to stay within the bounds */
+    public long evictions() {
+        return cache.evictions();
+    }
+
+    /** @return the number of entries cached */
+    public int size() {
+        return cache.size();
+    }
+
+    /** Remove every entry, leaving the counts unchanged */
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override public String toString() {
+        return "DerivativeCache[" + cache + "]";
+    }
+
+    /**
+     * @param expression a sum or product
+     * @param variable variable differentiated by
+     * @return the derivative cached for expression and variable, or null if none
+     */
+    Expression get(Expression expression, String variable) {
+        return cache.get(new Key(expression, variable));
+    }
+
+    /**
+     * @param expression a sum or product
+     * @param variable variable differentiated by
+     * @param derivative the derivative of expression with respect to variable
+     * @param nodes approximate number of nodes built for derivative that are
+     *        not part of the derivatives of the subexpressions of expression
+     */
+    void put(Expression expression, String variable, Expression derivative, int nodes) {
+        cache.put(new Key(expression, variable), derivative, ENTRY_BYTES + NODE_BYTES * nodes);
+    }
+
+    /** An immutable pair of an expression, by identity, and a variable */
+    private static final class Key {
+        private final Expression expression;
+        private final String variable;
+        private final int hash;
+
+        Key(Expression expression, String variable) {
+            this.expression = expression;
+            this.variable = variable;
+            this.hash = 31 * System.identityHashCode(expression) + variable.hashCode();
+        }
+
+        @Override public boolean equals(Object thatObject) {
+            if (!(thatObject instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) thatObject;
+            // expressions are canonical, so identical expressions are the same
+            // node; equals() would also match numbers differing past 5 decimals
+            return this.expression == that.expression && this.variable.equals(that.variable);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package expressivo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recursive-descent parser for the language of Expression.g4, which reads
+ * its input directly and builds expressions without tokens or a parse tree.
+ *
+ *   root : sum EOF;
+ *   sum : product ('+' product)*;
+ *   product : primitive ('*' primitive)*;
+ *   primitive : NUMBER | VARIABLE | '(' sum ')';
+ *
+ * Tokens are recognised exactly as the ANTLR lexer does, taking the longest
+ * match and skipping spaces (but no other whitespace), and expressions are
+ * built exactly as MakeExpression builds them, so both parsers give equal
+ * results for every input nested at most MAX_DEPTH parentheses deep; deeper
+ * input is invalid.
+ *
+ * Input held in memory is parsed from one array. Input read from a stream is
+ * parsed from a bounded buffer, refilled as the parse reaches its end, so only
+ * the current token and the expression built so far are ever in memory.
+ */
+final class DescentParser {
+
+    /** Longest run of digits whose value is exactly representable by a long and a double */
+    private static final int EXACT_DIGITS = 15;
+
+    /** Size of the buffer for input read from a stream */
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Deepest nesting of parentheses accepted. The parser and the operations
+     * on expressions recurse once or more per level, so deeper input is
+     * reported as invalid rather than overflowing the stack.
+     */
+    static final int MAX_DEPTH = 1000;
+
+    /** A stream of input characters */
+    private interface Source {
+        /**
+         * Reads characters into chars[offset..offset+length-1]
+         * @return the number of characters read, at least 1, or -1 at the end of the input
+         */
+        int read(char[] chars, int offset, int length) throws IOException;
+    }
+
+    private final Source source;
+    private final ByteBuffer bytes;
+    private final int offset;
+    private char[] buffer;
+    private int limit;
+    private int next = 0;
+    private int tokenStart = -1;
+    private long consumed = 0;
+    private int depth = 0;
+    private final List<Expression> stack = new ArrayList<>();
+    private String error = null;
+
+    // Abstraction Function
+    //   represents the parse of the input up to character consumed + next,
+    //   at(0..limit-1) being input characters consumed..consumed+limit-1, read
+    //   from bytes[offset..offset+limit-1] if bytes is non-null and from
+    //   buffer[0..limit-1] otherwise, the rest of the input, if any, being
+    //   still to be read from source;
+    //   if tokenStart >= 0, the token being recognised starts at at(tokenStart);
+    //   stack holds the operands of the sums and products being parsed,
+    //   in input order; depth is the number of parentheses open at next;
+    //   error describes the error found at next, if any
+    //
+    // Representation Invariant
+    //   exactly one of buffer and bytes is non-null
+    //   0 <= next <= limit <= buffer.length if buffer is non-null,
+    //     0 <= next <= limit and offset + limit <= bytes.limit() otherwise
+    //   -1 <= tokenStart <= next
+    //   0 <= depth <= MAX_DEPTH
+    //   source == null implies that buffer or bytes holds all of the input
+    //   bytes != null implies source == null
+
+    private DescentParser(char[] buffer, int limit, Source source) {
+        this.buffer = buffer;
+        this.limit = limit;
+        this.source = source;
+        this.bytes = null;
+        this.offset = 0;
+    }
+
+    private DescentParser(ByteBuffer bytes, int start, int end) {
+        this.buffer = null;
+        this.limit = end - start;
+        this.source = null;
+        this.bytes = bytes;
+        this.offset = start;
+    }
+
+    private static DescentParser of(CharSequence input) {
+        final char[] chars = new char[input.length()];
+        if (input instanceof String) {
+            ((String) input).getChars(0, chars.length, chars, 0);
+        } else {
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = input.charAt(i);
+            }
+        }
+        return new DescentParser(chars, chars.length, null);
+    }
+
+    private static DescentParser of(Reader reader) {
+        return new DescentParser(new char[BUFFER_SIZE], 0, reader::read);
+    }
+
+    private static DescentParser of(ReadableByteChannel channel) {
+        final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        return new DescentParser(new char[BUFFER_SIZE], 0, (chars, offset, length) -> {
+            bytes.clear().limit(Math.min(length, bytes.capacity()));
+            int read;
+            do {
+                read = channel.read(bytes);
+            } while (read == 0);
+            // the language is ASCII, so each byte is one character; other bytes
+            // are invalid in any encoding, and remain invalid as characters
+            for (int i = 0; i < read; i++) {
+                chars[offset + i] = (char) (bytes.get(i) & 0xFF);
+            }
+            return read;
+        });
+    }
+
+    /**
+     * Parse an expression.
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @return expression AST for the input, equal to the one built by
+     *         parsing input with ANTLR
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    static Expression parse(CharSequence input) {
+        final ParseResult result = tryParse(input);
+        if (!result.isValid()) {
+            throw new IllegalArgumentException("invalid expression: " + input
+                    + " (" + result.errorMessage() + " at index " + result.errorIndex() + ")");
+        }
+        return result.expression();
+    }
+
+    /**
+     * Parse an expression, reporting invalid input without throwing.
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @return the expression AST for the input, equal to the one built by
+     *         parsing input with ANTLR, or the first error in input
+     */
+    static ParseResult tryParse(CharSequence input) {
+        try {
+            return of(input).root();
+        } catch (IOException ioe) {
+            throw new AssertionError("input in memory cannot fail to be read", ioe);
+        }
+    }
+
+    /**
+     * Parse an expression held as ASCII bytes, reading them where they are,
+     * without copying or decoding them to a string.
+     * @param bytes holds the expression to parse, as defined in the PS3 handout,
+     *        in bytes[start..end-1], one character per byte; not modified or retained
+     * @param start index of the first byte of the expression
+     * @param end index after the last byte of the expression, start <= end <= bytes.limit()
+     * @return the expression AST for the input, equal to the one built by
+     *         parsing it with ANTLR, or the first error in it
+     */
+    static ParseResult tryParse(ByteBuffer bytes, int start, int end) {
+        try {
+            return new DescentParser(bytes, start, end).root();
+        } catch (IOException ioe) {
+            throw new AssertionError("input in memory cannot fail to be read", ioe);
+        }
+    }
+
+    /**
+     * Parse an expression read from a stream of characters, as it is read.
+     * @param reader the expression to parse, as defined in the PS3 handout,
+     *        is read from reader up to its end; not closed
+     * @return the expression AST for the input, equal to the one built by
+     *         parsing all of it with ANTLR, or the first error in it
+     * @throws IOException if reader fails
+     */
+    static ParseResult tryParse(Reader reader) throws IOException {
+        return of(reader).root();
+    }
+
+    /**
+     * Parse an expression read from a channel of ASCII bytes, as it is read.
+     * @param channel the expression to parse, as defined in the PS3 handout,
+     *        is read from channel up to its end, one character per byte; a
+     *        blocking channel, not closed
+     * @return the expression AST for the input, equal to the one built by
+     *         parsing all of it with ANTLR, or the first error in it
+     * @throws IOException if channel fails
+     */
+    static ParseResult tryParse(ReadableByteChannel channel) throws IOException {
+        return of(channel).root();
+    }
+
+    /**
+     * Unwinds the parser at the first error, which the parser records.
+     * Carries no stack trace or message, so one instance serves every parse.
+     */
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1;
+        private static final Failure INSTANCE = new Failure();
+
+        private Failure() {
+            super(null, null, false, false);
+        }
+    }
+
+    private ParseResult root() throws IOException {
+        try {
+            final Expression expression = sum();
+            skipSpaces();
+            if (available()) {
+                throw unexpected();
+            }
+            return ParseResult.success(expression);
+        } catch (Failure failure) {
+            return ParseResult.failure(index(), error);
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    private Expression sum() {
+        final int mark = stack.size();
+        stack.add(product());
+        while (accept('+')) {
+            stack.add(product());
+        }
+        if (stack.size() - mark == 1) {
+            return stack.remove(mark);
+        }
+        return Addition.of(popFrom(mark));
+    }
+
+    private Expression product() {
+        final int mark = stack.size();
+        stack.add(primitive());
+        while (accept('*')) {
+            stack.add(primitive());
+        }
+        if (stack.size() - mark == 1) {
+            return stack.remove(mark);
+        }
+        return Multiplication.of(popFrom(mark));
+    }
+
+    private Expression primitive() {
+        skipSpaces();
+        if (!available()) {
+            throw fail("expected a number, variable or '('");
+        }
+        final char c = at(next);
+        if (accept('(')) {
+            if (depth == MAX_DEPTH) {
+                next--;
+                throw fail("parentheses nested more than " + MAX_DEPTH + " deep");
+            }
+            depth++;
+            final Expression inner = sum();
+            if (!accept(')')) {
+                throw fail("expected ')'");
+            }
+            depth--;
+            return inner;
+        }
+        if (isDigit(c) || c == '.') {
+            return number();
+        }
+        if (isLetter(c)) {
+            tokenStart = next;
+            while (available() && isLetter(at(next))) {
+                next++;
+            }
+            return Variable.of(takeToken());
+        }
+        throw fail("expected a number, variable or '('");
+    }
+
+    /** NUMBER : [0-9]+ ('.' [0-9]*)? | '.' [0-9]+ */
+    private Expression number() {
+        tokenStart = next;
+        long whole = 0;
+        int digits = 0;
+        while (available() && isDigit(at(next))) {
+            whole = whole * 10 + (at(next) - '0');
+            digits++;
+            next++;
+        }
+        if (available() && at(next) == '.') {
+            next++;
+            boolean fraction = false;
+            while (available() && isDigit(at(next))) {
+                fraction = true;
+                next++;
+            }
+            if (digits == 0 && !fraction) {
+                next = tokenStart;
+                tokenStart = -1;
+                throw unexpected();
+            }
+        } else if (digits <= EXACT_DIGITS) {
+            // a short integer is exactly its long value, as parseDouble would give
+            tokenStart = -1;
+            return Value.of(whole);
+        }
+        final double num = Double.parseDouble(takeToken());
+        // numbers too large for a double are clamped, as in MakeExpression
+        return Value.of(Math.min(num, Double.MAX_VALUE));
+    }
+
+    /** Skips spaces, then consumes c if it is the next character */
+    private boolean accept(char c) {
+        skipSpaces();
+        if (available() && at(next) == c) {
+            next++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces() {
+        while (available() && at(next) == ' ') {
+            next++;
+        }
+    }
+
+    /**
+     * @param i index of an input character held, 0 <= i < limit
+     * @return the input character at(i): buffer[i], or the ASCII byte at offset + i
+     *         of bytes, other bytes than ASCII staying invalid as for channels
+     */
+    private char at(int i) {
+        return bytes == null ? buffer[i] : (char) (bytes.get(offset + i) & 0xFF);
+    }
+
+    /**
+     * @return true if there is a next character, at(next), reading more
+     *         of the input if needed
+     */
+    private boolean available() {
+        return next < limit || refill();
+    }
+
+    /**
+     * Reads more input into the buffer, first discarding the characters
+     * before the current token, or growing the buffer if it holds nothing else
+     * @return true if any input was read, false at the end of the input
+     */
+    private boolean refill() {
+        if (source == null) {
+            return false;
+        }
+        final int keep = tokenStart >= 0 ? tokenStart : next;
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            consumed += keep;
+            limit -= keep;
+            next -= keep;
+            if (tokenStart >= 0) {
+                tokenStart = 0;
+            }
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        try {
+            final int read = source.read(buffer, limit, buffer.length - limit);
+            if (read <= 0) {
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /** @return the text of the current token, which ends at next */
+    private String takeToken() {
+        final String text;
+        if (bytes == null) {
+            text = new String(buffer, tokenStart, next - tokenStart);
+        } else {
+            final char[] chars = new char[next - tokenStart];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = at(tokenStart + i);
+            }
+            text = new String(chars);
+        }
+        tokenStart = -1;
+        return text;
+    }
+
+    /** @return the index in the whole input of the next character */
+    private int index() {
+        return (int) Math.min(consumed + next, Integer.MAX_VALUE);
+    }
+
+    /** Removes and returns the operands on the stack from index mark */
+    private Expression[] popFrom(int mark) {
+        final List<Expression> operands = stack.subList(mark, stack.size());
+        final Expression[] result = operands.toArray(new Expression[operands.size()]);
+        operands.clear();
+        return result;
+    }
+
+    /** Records an error at the current position */
+    private Failure fail(String message) {
+        error = message;
+        return Failure.INSTANCE;
+    }
+
+    /** Records an error for the next character */
+    private Failure unexpected() {
+        return fail("unexpected '" + at(next) + "'");
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,98 @@
+package expressivo;
+
+import java.util.Map;
+
+/**
+ * Evaluates an expression and its derivative with respect to one variable
+ * at a point, by forward-mode automatic differentiation.
+ *
+ * Every node is evaluated as a dual number, a value and a tangent, the
+ * tangent being the derivative of the node with respect to the variable:
+ * (a, a') + (b, b') = (a + b, a' + b') and (a, a')*(b, b') = (ab, a'b + ab').
+ * One walk of the tree gives both numbers, without building the derivative
+ * expression, which for products of many factors is much larger than the
+ * expression itself. Dual numbers are held in primitive locals and two
+ * fields of the walker, so nothing is allocated per node.
+ */
+public final class DualEvaluator {
+
+    private DualEvaluator() {
+        // not instantiable
+    }
+
+    /**
+     * Evaluates an expression and its derivative at a point
+     *
+     * @param expression the expression to evaluate
+     * @param variable the variable to differentiate by; need not appear in expression
+     * @param point maps every variable of expression to its value; not modified
+     * @param result array of length at least 2, receiving the value of expression
+     *        at point in result[0], and the value of its derivative with respect to
+     *        variable at point in result[1], both in double arithmetic with operands
+     *        evaluated left to right
+     * @throws IllegalArgumentException if a variable of expression is not bound by point
+     */
+    public static void evaluate(Expression expression, String variable, Map<String, Double> point, double[] result) {
+        final Walker walker = new Walker(variable, point);
+        expression.accept(walker);
+        result[0] = walker.value;
+        result[1] = walker.tangent;
+    }
+
+    /** Walks an expression, leaving the dual number of the node last visited in value and tangent */
+    private static final class Walker implements Expression.Visitor<Void> {
+        private final String variable;
+        private final Map<String, Double> point;
+        private double value;
+        private double tangent;
+
+        Walker(String variable, Map<String, Double> point) {
+            this.variable = variable;
+            this.point = point;
+        }
+
+        @Override public Void onValue(Value number) {
+            value = number.value();
+            tangent = 0;
+            return null;
+        }
+
+        @Override public Void onVariable(Variable var) {
+            final Double bound = point.get(var.name());
+            if (bound == null) {
+                throw new IllegalArgumentException("no value for variable " + var.name());
+            }
+            value = bound;
+            tangent = var.name().equals(variable) ? 1 : 0;
+            return null;
+        }
+
+        @Override public Void onAddition(Addition addition) {
+            addition.get(0).accept(this);
+            double sum = value;
+            double sumTangent = tangent;
+            for (int i = 1; i < addition.size(); i++) {
+                addition.get(i).accept(this);
+                sum += value;
+                sumTangent += tangent;
+            }
+            value = sum;
+            tangent = sumTangent;
+            return null;
+        }
+
+        @Override public Void onMultiplication(Multiplication multiplication) {
+            multiplication.get(0).accept(this);
+            double product = value;
+            double productTangent = tangent;
+            for (int i = 1; i < multiplication.size(); i++) {
+                multiplication.get(i).accept(this);
+                productTangent = productTangent * value + product * tangent;
+                product *= value;
+            }
+            value = product;
+            tangent = productTangent;
+            return null;
+        }
+    }
+}
@@ -3,13 +3,11 @@
  */
 package expressivo;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Map;
 
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.misc.ParseCancellationException;
-import org.antlr.v4.runtime.tree.ParseTree;
-
 /**
  * An immutable data type representing a polynomial expression of:
  *   + and *
@@ -26,12 +24,124 @@ public interface Expression {
 	// Datatype definition:
     //   Expression = Value(num:double)
     //                + Variable(id:String)
-    //                + Addition(left:Expression, right:Expression)
-    //                + Multiplication(left:Expression, right:Expression)
+    //                + Addition(terms:List<Expression>)
+    //                + Multiplication(factors:List<Expression>)
+    //   Sums are flattened, since their grouping has no meaning;
+    //   products keep their grouping, the factors being grouped
+    //   from left to right
+    
+    /**
+     * Parse an expression.
+     * @param input expression to parse, as defined in the PS3 handout.
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static Expression parse(String input) {
+        return ParseMode.ANTLR.parse(input);
+    }
+
+    /**
+     * Parse an expression with a chosen parser.
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @param mode the parser to use
+     * @return expression AST for the input, equal to parse(input.toString())
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static Expression parse(CharSequence input, ParseMode mode) {
+        return mode.parse(input);
+    }
+
+    /**
+     * Parse an expression as it is read, without holding all of its text in
+     * memory: only the expression built so far and a bounded buffer are kept.
+     * @param reader the expression to parse, as defined in the PS3 handout,
+     *        is read from reader up to its end; not closed
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     * @throws IOException if reader fails
+     */
+    public static Expression parse(Reader reader) throws IOException {
+        return DescentParser.tryParse(reader).expression();
+    }
+
+    /**
+     * Parse an expression as it is read, without holding all of its text in
+     * memory: only the expression built so far and a bounded buffer are kept.
+     * @param channel the expression to parse, as defined in the PS3 handout,
+     *        is read from channel up to its end, one ASCII character per byte;
+     *        a blocking channel, not closed
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     * @throws IOException if channel fails
+     */
+    public static Expression parse(ReadableByteChannel channel) throws IOException {
+        return DescentParser.tryParse(channel).expression();
+    }
+
+    /**
+     * Parse an expression, reporting invalid input without throwing.
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @return the expression AST for the input, equal to parse(input.toString()),
+     *         or where and why input is invalid
+     */
+    public static ParseResult tryParse(CharSequence input) {
+        return ParseMode.DESCENT.tryParse(input);
+    }
     
 	 /** Creates an empty expression such that Expression.parse("0").equals(emptyExpression())  */
     public static Expression emptyExpression() {
-        return new Value(0.0);
+        return Value.ZERO;
+    }
+
+    // Factories
+    //   Variants are hash-consed: every node is created through these
+    //   factories (or the of() methods of the variants), so structurally
+    //   equal subtrees are the same object.
+
+    /**
+     * @param num a nonnegative finite number
+     * @return the canonical number expression equal to num
+     */
+    public static Expression number(double num) {
+        return Value.of(num);
+    }
+
+    /**
+     * @param id non-null non-empty case-sensitive string of letters, a-zA-Z
+     * @return the canonical variable expression named id
+     */
+    public static Expression variable(String id) {
+        return Variable.of(id);
+    }
+
+    /**
+     * @param left non-null expression
+     * @param right non-null expression
+     * @return the canonical expression left + right, not simplified
+     */
+    public static Expression sum(Expression left, Expression right) {
+        return Addition.of(left, right);
+    }
+
+    /**
+     * @param left non-null expression
+     * @param right non-null expression
+     * @return the canonical expression (left)*(right), not simplified
+     */
+    public static Expression product(Expression left, Expression right) {
+        return Multiplication.of(left, right);
+    }
+
+    /**
+     * Differentiate this expression with respect to a variable
+     * 
+     * @param variable non-null non-empty case-sensitive string of letters, a-zA-Z
+     * @return the derivative of this with respect to variable, built by the
+     *         sum and product rules; terms multiplied by 0 are dropped and
+     *         factors of 1 omitted, but it is otherwise not simplified
+     */
+    public default Expression differentiate(String variable) {
+        return Derivative.of(this, variable);
     }
 
     /**
@@ -111,6 +221,56 @@ public interface Expression {
      */  
     @Override public String toString();
 
+    /**
+     * Appends the string representation of this expression to a builder,
+     * without building the strings of its subexpressions
+     * 
+     * @param builder non-null builder, to which exactly this.toString()
+     *        is appended
+     */
+    public void appendTo(StringBuilder builder);
+
+    /**
+     * @return true if and only if this expression is a number equal to 0,
+     *         correct to 5 decimal places; this.isZero() implies
+     *         this.equals(emptyExpression())
+     */
+    public default boolean isZero() {
+        return false;
+    }
+
+    /**
+     * @return true if and only if this expression is a number equal to 1,
+     *         correct to 5 decimal places
+     */
+    public default boolean isOne() {
+        return false;
+    }
+
+    /**
+     * An operation over expressions, with one case per variant
+     * 
+     * @param <R> the type of the result of the operation
+     */
+    public interface Visitor<R> {
+        /** @return the result of the operation on a number */
+        public R onValue(Value value);
+        /** @return the result of the operation on a variable */
+        public R onVariable(Variable variable);
+        /** @return the result of the operation on a sum */
+        public R onAddition(Addition addition);
+        /** @return the result of the operation on a product */
+        public R onMultiplication(Multiplication multiplication);
+    }
+
+    /**
+     * Applies an operation to this expression
+     * 
+     * @param visitor the operation to apply
+     * @return the result of the case of visitor for the variant of this
+     */
+    public <R> R accept(Visitor<R> visitor);
+
     /**
      * Checks if an object is equal to this addition expression
      * Two expressions are equal if and only if: 
@@ -0,0 +1,669 @@
+package expressivo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles expressions to JVM bytecode.
+ *
+ * Each expression becomes a class implementing CompiledExpression whose
+ * eval() method is straight-line arithmetic on the variable slots, so the
+ * JIT compiles it like hand-written code, with no virtual dispatch or
+ * pointer chasing over the tree. Each class is defined by its own class
+ * loader, so it is unloaded once no longer used. Compiled functions are
+ * cached per distinct expression and variable order. Expressions too large
+ * for a class file, or too deeply nested to generate code for, are evaluated
+ * by walking their tree instead.
+ */
+public final class ExpressionCompiler {
+
+    // Compiled functions of the expressions still alive. The weak keys are
+    // compared by equals(), which only compares numbers to 5 decimal places,
+    // so each key maps to the functions compiled for every expression equal
+    // to it, and a function is only reused for the very expression it was
+    // compiled from: expressions are canonical, so that is the same exact
+    // structure. Compiled code holds no reference to its expression, so the
+    // keys can be collected.
+    private static final Map<Expression, List<Compiled>> CACHE = new WeakHashMap<>();
+
+    private static final AtomicLong CLASS_COUNT = new AtomicLong();
+
+    // Methods are kept well below the 64KB limit of the JVM, and small
+    // enough for the JIT to compile; larger operand lists are split into
+    // helper methods that continue an accumulated sum or product.
+    private static final int METHOD_BUDGET = 8000;
+
+    // Generating code recurses once per level of nesting, so more deeply
+    // nested expressions are evaluated by the interpreter instead.
+    private static final int MAX_DEPTH = 400;
+
+    private ExpressionCompiler() {
+        // not instantiable
+    }
+
+    /**
+     * @param expression an expression
+     * @return the distinct variables of expression, in alphabetical order,
+     *         the default slot order of compile(expression)
+     */
+    public static List<String> variables(Expression expression) {
+        final TreeSet<String> names = new TreeSet<>();
+        final Set<Expression> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        expression.accept(new Expression.Visitor<Void>() {
+            @Override public Void onValue(Value value) {
+                return null;
+            }
+            @Override public Void onVariable(Variable variable) {
+                names.add(variable.name());
+                return null;
+            }
+            @Override public Void onAddition(Addition addition) {
+                for (int i = 0; i < addition.size(); i++) {
+                    visitOnce(addition.get(i));
+                }
+                return null;
+            }
+            @Override public Void onMultiplication(Multiplication multiplication) {
+                for (int i = 0; i < multiplication.size(); i++) {
+                    visitOnce(multiplication.get(i));
+                }
+                return null;
+            }
+            // shared subtrees are only visited once
+            private void visitOnce(Expression e) {
+                if (visited.add(e)) {
+                    e.accept(this);
+                }
+            }
+        });
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    /**
+     * Compiles an expression, its variables being assigned slots in
+     * alphabetical order, as given by variables(expression)
+     *
+     * @param expression the expression to compile
+     * @return a function evaluating expression
+     */
+    public static CompiledExpression compile(Expression expression) {
+        return compile(expression, variables(expression));
+    }
+
+    /**
+     * Compiles an expression
+     *
+     * @param expression the expression to compile
+     * @param slots distinct variable names; variable slots.get(i) is read
+     *        from vars[i] by the eval() method of the result
+     * @return a function evaluating expression, shared with previous
+     *         compilations of an equal expression with the same slots
+     * @throws IllegalArgumentException if a variable of expression is
+     *         not in slots
+     */
+    public static CompiledExpression compile(Expression expression, List<String> slots) {
+        final List<String> key = Collections.unmodifiableList(new ArrayList<>(slots));
+        synchronized (CACHE) {
+            final CompiledExpression cached = cached(expression, key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final CompiledExpression compiled;
+        try {
+            if (depthExceeds(expression, MAX_DEPTH)) {
+                throw new TooLargeException();
+            }
+            compiled = new Generator(key).generate(expression);
+        } catch (TooLargeException tle) {
+            // an interpreter refers to its expression, so it is not cached
+            return new Interpreter(expression, key);
+        }
+        synchronized (CACHE) {
+            final CompiledExpression cached = cached(expression, key);
+            if (cached != null) {
+                return cached;
+            }
+            CACHE.computeIfAbsent(expression, e -> new ArrayList<>()).add(new Compiled(expression, key, compiled));
+            return compiled;
+        }
+    }
+
+    /**
+     * @return the function compiled before for exactly expression with slots,
+     *         or null if none; forgets functions of collected expressions.
+     *         Must be called holding the lock on CACHE
+     */
+    private static CompiledExpression cached(Expression expression, List<String> slots) {
+        final List<Compiled> equal = CACHE.get(expression);
+        if (equal == null) {
+            return null;
+        }
+        CompiledExpression found = null;
+        for (Iterator<Compiled> it = equal.iterator(); it.hasNext(); ) {
+            final Compiled compiled = it.next();
+            final Expression source = compiled.expression.get();
+            if (source == null) {
+                it.remove();
+            } else if (source == expression && compiled.slots.equals(slots)) {
+                found = compiled.function;
+            }
+        }
+        return found;
+    }
+
+    /** A function compiled for an expression, with its slots */
+    private static final class Compiled {
+        final WeakReference<Expression> expression;
+        final List<String> slots;
+        final CompiledExpression function;
+
+        Compiled(Expression expression, List<String> slots, CompiledExpression function) {
+            this.expression = new WeakReference<>(expression);
+            this.slots = slots;
+            this.function = function;
+        }
+    }
+
+    /**
+     * @param expression an expression
+     * @param limit maximum depth
+     * @return true if expression has a node nested more than limit levels deep,
+     *         found without recursion so that any depth can be measured
+     */
+    private static boolean depthExceeds(Expression expression, int limit) {
+        // the deepest level each node has been reached at, so shared subexpressions
+        // are only explored again when reached deeper
+        final Map<Expression, Integer> reached = new IdentityHashMap<>();
+        final List<Expression> nodes = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        nodes.add(expression);
+        depths.add(0);
+        while (!nodes.isEmpty()) {
+            final Expression node = nodes.remove(nodes.size() - 1);
+            final int depth = depths.remove(depths.size() - 1);
+            if (depth > limit) {
+                return true;
+            }
+            final Integer before = reached.get(node);
+            if (before != null && before >= depth) {
+                continue;
+            }
+            reached.put(node, depth);
+            if (node instanceof Addition) {
+                final Addition sum = (Addition) node;
+                for (int i = 0; i < sum.size(); i++) {
+                    nodes.add(sum.get(i));
+                    depths.add(depth + 1);
+                }
+            } else if (node instanceof Multiplication) {
+                final Multiplication product = (Multiplication) node;
+                for (int i = 0; i < product.size(); i++) {
+                    nodes.add(product.get(i));
+                    depths.add(depth + 1);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Thrown when a class file would exceed a limit of the JVM */
+    private static final class TooLargeException extends RuntimeException {
+        private static final long serialVersionUID = 1;
+    }
+
+    /**
+     * Evaluates an expression by walking its tree, for the rare expressions
+     * with too many distinct numbers or operands to fit in a class file
+     */
+    private static final class Interpreter implements CompiledExpression {
+        private final Expression expression;
+        private final Map<String, Integer> slotOf = new HashMap<>();
+
+        Interpreter(Expression expression, List<String> slots) {
+            this.expression = expression;
+            for (int i = 0; i < slots.size(); i++) {
+                slotOf.put(slots.get(i), i);
+            }
+            for (String name : variables(expression)) {
+                if (!slotOf.containsKey(name)) {
+                    throw new IllegalArgumentException("no slot for variable " + name);
+                }
+            }
+        }
+
+        @Override public double eval(double[] vars) {
+            return expression.accept(new Expression.Visitor<Double>() {
+                @Override public Double onValue(Value value) {
+                    return value.value();
+                }
+                @Override public Double onVariable(Variable variable) {
+                    return vars[slotOf.get(variable.name())];
+                }
+                @Override public Double onAddition(Addition addition) {
+                    double sum = addition.get(0).accept(this);
+                    for (int i = 1; i < addition.size(); i++) {
+                        sum += addition.get(i).accept(this);
+                    }
+                    return sum;
+                }
+                @Override public Double onMultiplication(Multiplication multiplication) {
+                    double product = multiplication.get(0).accept(this);
+                    for (int i = 1; i < multiplication.size(); i++) {
+                        product *= multiplication.get(i).accept(this);
+                    }
+                    return product;
+                }
+            });
+        }
+    }
+
+    /** Defines one generated class, which is unloaded with its loader */
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(ExpressionCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String binaryName, byte[] classFile) {
+            return defineClass(binaryName, classFile, 0, classFile.length);
+        }
+    }
+
+    /**
+     * Writes the class file of one compiled expression.
+     *
+     * The class has a no-argument constructor, the eval([D)D method, and
+     * static helper methods (D[D)D, each taking the sum or product
+     * accumulated so far and continuing it with a chunk of operands.
+     */
+    private static final class Generator {
+        private static final int MAGIC = 0xCAFEBABE;
+        private static final int JAVA_8 = 52;
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_PRIVATE = 0x0002;
+        private static final int ACC_STATIC = 0x0008;
+        private static final int ACC_FINAL = 0x0010;
+        private static final int ACC_SUPER = 0x0020;
+
+        private static final int ICONST_0 = 0x03;
+        private static final int DCONST_0 = 0x0e;
+        private static final int DCONST_1 = 0x0f;
+        private static final int BIPUSH = 0x10;
+        private static final int SIPUSH = 0x11;
+        private static final int LDC_W = 0x13;
+        private static final int LDC2_W = 0x14;
+        private static final int DLOAD_0 = 0x26;
+        private static final int ALOAD_0 = 0x2a;
+        private static final int DALOAD = 0x31;
+        private static final int DADD = 0x63;
+        private static final int DMUL = 0x6b;
+        private static final int DRETURN = 0xaf;
+        private static final int RETURN = 0xb1;
+        private static final int INVOKESPECIAL = 0xb7;
+        private static final int INVOKESTATIC = 0xb8;
+
+        private static final String HELPER_DESCRIPTOR = "(D[D)D";
+
+        private final Map<String, Integer> slotOf = new HashMap<>();
+        private final ConstantPool pool = new ConstantPool();
+        private final List<byte[]> methods = new ArrayList<>();
+        private final Map<Expression, Integer> costs = new IdentityHashMap<>();
+        private final String className;
+        private final int thisClass;
+
+        Generator(List<String> slots) {
+            for (int i = 0; i < slots.size(); i++) {
+                slotOf.put(slots.get(i), i);
+            }
+            this.className = "expressivo/generated/Compiled" + CLASS_COUNT.incrementAndGet();
+            this.thisClass = pool.classRef(className);
+        }
+
+        CompiledExpression generate(Expression expression) {
+            final Method constructor = new Method();
+            constructor.op(ALOAD_0, 1);
+            constructor.op(INVOKESPECIAL, -1);
+            constructor.u2(pool.methodRef("java/lang/Object", "<init>", "()V"));
+            constructor.op(RETURN, 0);
+            methods.add(constructor.toBytes(ACC_PUBLIC, "<init>", "()V", 1));
+
+            final Method eval = new Method(1);
+            emit(expression, eval);
+            eval.op(DRETURN, -2);
+            methods.add(eval.toBytes(ACC_PUBLIC | ACC_FINAL, "eval", "([D)D", 2));
+
+            final byte[] classFile = toClassFile();
+            final Class<?> generated = new Loader().define(className.replace('/', '.'), classFile);
+            try {
+                return (CompiledExpression) generated.getConstructor().newInstance();
+            } catch (ReflectiveOperationException roe) {
+                throw new IllegalStateException("cannot instantiate compiled expression", roe);
+            }
+        }
+
+        /** @return an estimate of the bytecode size of e, in bytes */
+        private int cost(Expression e) {
+            final Integer known = costs.get(e);
+            if (known != null) {
+                return known;
+            }
+            final int cost = e.accept(new Expression.Visitor<Integer>() {
+                @Override public Integer onValue(Value value) {
+                    return 3;
+                }
+                @Override public Integer onVariable(Variable variable) {
+                    return 5;
+                }
+                @Override public Integer onAddition(Addition addition) {
+                    int cost = 0;
+                    for (int i = 0; i < addition.size(); i++) {
+                        cost += cost(addition.get(i)) + 1;
+                    }
+                    return cost;
+                }
+                @Override public Integer onMultiplication(Multiplication multiplication) {
+                    int cost = 0;
+                    for (int i = 0; i < multiplication.size(); i++) {
+                        cost += cost(multiplication.get(i)) + 1;
+                    }
+                    return cost;
+                }
+            });
+            costs.put(e, cost);
+            return cost;
+        }
+
+        /** Emits the code pushing the value of an expression in one method */
+        private final class Emitter implements Expression.Visitor<Void> {
+            private final Method m;
+
+            Emitter(Method m) {
+                this.m = m;
+            }
+
+            @Override public Void onValue(Value value) {
+                final double num = value.value();
+                if (num == 0.0) {
+                    m.op(DCONST_0, 2);
+                } else if (num == 1.0) {
+                    m.op(DCONST_1, 2);
+                } else {
+                    m.op(LDC2_W, 2);
+                    m.u2(pool.doubleConstant(num));
+                }
+                return null;
+            }
+
+            @Override public Void onVariable(Variable variable) {
+                final Integer slot = slotOf.get(variable.name());
+                if (slot == null) {
+                    throw new IllegalArgumentException("no slot for variable " + variable);
+                }
+                m.op(m.varsLoad, 1);
+                pushInt(slot, m);
+                m.op(DALOAD, 0);
+                return null;
+            }
+
+            @Override public Void onAddition(Addition addition) {
+                emitOperands(addition, addition.size(), addition::get, DADD, m);
+                return null;
+            }
+
+            @Override public Void onMultiplication(Multiplication multiplication) {
+                emitOperands(multiplication, multiplication.size(), multiplication::get, DMUL, m);
+                return null;
+            }
+        }
+
+        private void emit(Expression e, Method m) {
+            e.accept(new Emitter(m));
+        }
+
+        private interface Operands {
+            Expression get(int i);
+        }
+
+        /**
+         * Emits operand 0, then combines it with every other operand
+         * by op, left to right; if the operands do not fit in one method,
+         * they are split in chunks, each one a helper method
+         */
+        private void emitOperands(Expression node, int size, Operands operands, int op, Method m) {
+            emit(operands.get(0), m);
+            if (cost(node) <= METHOD_BUDGET) {
+                for (int i = 1; i < size; i++) {
+                    emit(operands.get(i), m);
+                    m.op(op, -2);
+                }
+                return;
+            }
+            int start = 1;
+            while (start < size) {
+                int end = start;
+                int chunkCost = 0;
+                do {
+                    chunkCost += cost(operands.get(end)) + 1;
+                    end++;
+                } while (end < size && chunkCost + cost(operands.get(end)) < METHOD_BUDGET);
+
+                final Method helper = new Method(2);
+                helper.op(DLOAD_0, 2);
+                for (int i = start; i < end; i++) {
+                    emit(operands.get(i), helper);
+                    helper.op(op, -2);
+                }
+                helper.op(DRETURN, -2);
+                final String name = "chunk" + methods.size();
+                methods.add(helper.toBytes(ACC_PRIVATE | ACC_STATIC, name, HELPER_DESCRIPTOR, 3));
+
+                m.op(m.varsLoad, 1);
+                m.op(INVOKESTATIC, -1);
+                m.u2(pool.methodRef(className, name, HELPER_DESCRIPTOR));
+                start = end;
+            }
+        }
+
+        private void pushInt(int value, Method m) {
+            if (value <= 5) {
+                m.op(ICONST_0 + value, 1);
+            } else if (value <= Byte.MAX_VALUE) {
+                m.op(BIPUSH, 1);
+                m.u1(value);
+            } else if (value <= Short.MAX_VALUE) {
+                m.op(SIPUSH, 1);
+                m.u2(value);
+            } else {
+                m.op(LDC_W, 1);
+                m.u2(pool.intConstant(value));
+            }
+        }
+
+        private byte[] toClassFile() {
+            final int superClass = pool.classRef("java/lang/Object");
+            final int iface = pool.classRef(CompiledExpression.class.getName().replace('.', '/'));
+            try {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(MAGIC);
+                out.writeShort(0);
+                out.writeShort(JAVA_8);
+                pool.writeTo(out);
+                out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(iface);
+                out.writeShort(0); // fields
+                out.writeShort(methods.size());
+                for (byte[] method : methods) {
+                    out.write(method);
+                }
+                out.writeShort(0); // attributes
+                return bytes.toByteArray();
+            } catch (IOException ioe) {
+                throw new AssertionError("ByteArrayOutputStream does not throw IOException", ioe);
+            }
+        }
+
+        /** The code of one method, with its operand stack depth in words */
+        private final class Method {
+            private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+            private final int varsLoad;
+            private int depth = 0;
+            private int maxDepth = 0;
+
+            /** A method without access to the variables */
+            Method() {
+                this.varsLoad = -1;
+            }
+
+            /** @param varsLocal the local variable index of the vars array */
+            Method(int varsLocal) {
+                this.varsLoad = ALOAD_0 + varsLocal;
+            }
+
+            void op(int opcode, int stackChange) {
+                code.write(opcode);
+                depth += stackChange;
+                maxDepth = Math.max(maxDepth, depth);
+            }
+
+            void u1(int value) {
+                code.write(value);
+            }
+
+            void u2(int value) {
+                code.write(value >>> 8);
+                code.write(value);
+            }
+
+            byte[] toBytes(int access, String name, String descriptor, int maxLocals) {
+                if (code.size() > 0xFFFF) {
+                    throw new TooLargeException();
+                }
+                try {
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    final DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeShort(access);
+                    out.writeShort(pool.utf8(name));
+                    out.writeShort(pool.utf8(descriptor));
+                    out.writeShort(1);
+                    out.writeShort(pool.utf8("Code"));
+                    out.writeInt(12 + code.size());
+                    out.writeShort(maxDepth);
+                    out.writeShort(maxLocals);
+                    out.writeInt(code.size());
+                    code.writeTo(out);
+                    out.writeShort(0); // exception table
+                    out.writeShort(0); // attributes
+                    return bytes.toByteArray();
+                } catch (IOException ioe) {
+                    throw new AssertionError("ByteArrayOutputStream does not throw IOException", ioe);
+                }
+            }
+        }
+    }
+
+    /** The constant pool of a class file, each entry written once */
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int DOUBLE = 6;
+        private static final int CLASS = 7;
+        private static final int METHOD_REF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(entries);
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private int next = 1;
+
+        int utf8(String value) {
+            return entry("U" + value, 1, () -> {
+                out.writeByte(UTF8);
+                out.writeUTF(value);
+            });
+        }
+
+        int classRef(String internalName) {
+            final int name = utf8(internalName);
+            return entry("C" + internalName, 1, () -> {
+                out.writeByte(CLASS);
+                out.writeShort(name);
+            });
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            final int ownerIndex = classRef(owner);
+            final int nameIndex = utf8(name);
+            final int descriptorIndex = utf8(descriptor);
+            final int nameAndType = entry("N" + name + descriptor, 1, () -> {
+                out.writeByte(NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return entry("M" + owner + "." + name + descriptor, 1, () -> {
+                out.writeByte(METHOD_REF);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        int intConstant(int value) {
+            return entry(value, 1, () -> {
+                out.writeByte(INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        int doubleConstant(double value) {
+            // doubles take two pool slots
+            return entry(Double.doubleToRawLongBits(value) + "D", 2, () -> {
+                out.writeByte(DOUBLE);
+                out.writeDouble(value);
+            });
+        }
+
+        private interface EntryWriter {
+            void write() throws IOException;
+        }
+
+        private int entry(Object key, int slots, EntryWriter writer) {
+            final Integer known = indexes.get(key);
+            if (known != null) {
+                return known;
+            }
+            if (next + slots > 0xFFFF) {
+                throw new TooLargeException();
+            }
+            try {
+                writer.write();
+            } catch (IOException ioe) {
+                throw new AssertionError("ByteArrayOutputStream does not throw IOException", ioe);
+            }
+            final int index = next;
+            next += slots;
+            indexes.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(next);
+            entries.writeTo(classFile);
+        }
+    }
+}
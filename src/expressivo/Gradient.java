@@ -0,0 +1,102 @@
+package expressivo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Differentiates an expression with respect to every one of its variables
+ * in a single traversal.
+ *
+ * Each node yields the map from the variables it contains to its partial
+ * derivatives, built from its children's maps by the same sum and product
+ * rules as Derivative, so every partial derivative is the same expression
+ * Derivative would build. Variables a subexpression does not contain are
+ * left out of its map rather than mapped to 0, so the cost grows with the
+ * size of the tree times the number of variables in each subtree, rather
+ * than times the number of variables in the whole expression; and a
+ * subexpression shared by several parents is differentiated only once.
+ */
+final class Gradient implements Expression.Visitor<Map<String, Expression>> {
+
+    private final Map<Expression, Map<String, Expression>> done = new IdentityHashMap<>();
+
+    // Abstraction Function
+    //   represents one gradient computation, in which the subexpressions
+    //   differentiated so far are the keys of done, each mapped to the map
+    //   from the variables it contains to its partial derivatives
+    //
+    // Representation Invariant
+    //   no map in done maps a variable to null
+    //
+    // Safety From Exposure
+    //   - done is private, and its maps are only returned from of() after
+    //     being copied
+
+    private Gradient() {
+    }
+
+    /**
+     * @param expression the expression to differentiate
+     * @return the map from each variable of expression to the derivative of
+     *         expression with respect to it, equal to expression.differentiate(variable),
+     *         iterating in order of variable name; empty if expression has no variables
+     */
+    static Map<String, Expression> of(Expression expression) {
+        return new TreeMap<>(new Gradient().partials(expression));
+    }
+
+    private Map<String, Expression> partials(Expression expression) {
+        final Map<String, Expression> known = done.get(expression);
+        if (known != null) {
+            return known;
+        }
+        final Map<String, Expression> partials = expression.accept(this);
+        done.put(expression, partials);
+        return partials;
+    }
+
+    @Override public Map<String, Expression> onValue(Value value) {
+        return Collections.emptyMap();
+    }
+
+    @Override public Map<String, Expression> onVariable(Variable var) {
+        return Collections.singletonMap(var.name(), Value.ONE);
+    }
+
+    /** d(u + v + ...) = du + dv + ..., for each variable */
+    @Override public Map<String, Expression> onAddition(Addition addition) {
+        final Map<String, Expression> result = new HashMap<>(partials(addition.get(0)));
+        for (int i = 1; i < addition.size(); i++) {
+            partials(addition.get(i)).forEach((variable, partial) ->
+                    result.merge(variable, partial, Expression::addExpr));
+        }
+        return result;
+    }
+
+    /**
+     * d(p*f) = dp*f + p*df for each variable, applied to the factors from left to
+     * right as they are grouped, with p the product of the factors before f
+     */
+    @Override public Map<String, Expression> onMultiplication(Multiplication multiplication) {
+        Expression product = multiplication.get(0);
+        Map<String, Expression> result = partials(product);
+        for (int i = 1; i < multiplication.size(); i++) {
+            final Expression factor = multiplication.get(i);
+            final Map<String, Expression> factorPartials = partials(factor);
+            final Map<String, Expression> next = new HashMap<>();
+            for (Map.Entry<String, Expression> entry : result.entrySet()) {
+                next.put(entry.getKey(), entry.getValue().multiplyExpr(factor));
+            }
+            // a variable missing from either map has partial 0, and adding 0 leaves the other term
+            for (Map.Entry<String, Expression> entry : factorPartials.entrySet()) {
+                next.merge(entry.getKey(), product.multiplyExpr(entry.getValue()), Expression::addExpr);
+            }
+            result = next;
+            product = Multiplication.of(product, factor);
+        }
+        return result;
+    }
+}
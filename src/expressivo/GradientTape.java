@@ -0,0 +1,255 @@
+package expressivo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression compiled to a flat tape of operations, for evaluating its
+ * gradient by reverse-mode automatic differentiation.
+ *
+ * The tape lists the distinct nodes of the expression in an order where
+ * operands come before the operations using them, each node being a number,
+ * a variable, or a binary sum or product; products and sums of more than
+ * two operands become chains of binary operations, grouped from left to
+ * right as they are evaluated. A forward sweep along the tape computes the
+ * value of every node, and one adjoint sweep back along it computes the
+ * derivative of the expression with respect to every node, and so every
+ * variable, at once: the whole gradient costs a small constant multiple of
+ * one evaluation, however many variables there are. Subexpressions shared
+ * by several parents appear on the tape once.
+ *
+ * The sweeps work in buffers allocated when the tape is compiled, so
+ * evaluating allocates nothing; for the same reason, a tape must not be
+ * used by several threads at once.
+ */
+public final class GradientTape {
+
+    private static final byte NUMBER = 0;
+    private static final byte VARIABLE = 1;
+    private static final byte ADD = 2;
+    private static final byte MULTIPLY = 3;
+
+    private final byte[] opcodes;
+    private final int[] left;
+    private final int[] right;
+    private final double[] values;
+    private final double[] adjoints;
+    private final int slots;
+
+    // Abstraction Function
+    //   represents the expression computed by the last node of the tape,
+    //   where node i is, by opcodes[i]:
+    //     NUMBER    the number values[i], which no sweep overwrites
+    //     VARIABLE  the variable in slot left[i]
+    //     ADD       (node left[i]) + (node right[i])
+    //     MULTIPLY  (node left[i]) * (node right[i])
+    //   as a function of slots variables
+    //
+    // Representation Invariant
+    //   opcodes, left, right, values, adjoints all have the same length n >= 1
+    //   for every ADD or MULTIPLY node i, 0 <= left[i] < i and 0 <= right[i] < i
+    //   for every VARIABLE node i, 0 <= left[i] < slots
+    //
+    // Safety From Exposure
+    //   - all fields are private and never returned; the buffers values and
+    //     adjoints are only written by the sweeps
+
+    private GradientTape(byte[] opcodes, int[] left, int[] right, double[] values, int slots) {
+        this.opcodes = opcodes;
+        this.left = left;
+        this.right = right;
+        this.values = values;
+        this.adjoints = new double[opcodes.length];
+        this.slots = slots;
+        checkRep();
+    }
+
+    private void checkRep() {
+        final int n = opcodes.length;
+        assert n >= 1;
+        assert left.length == n && right.length == n && values.length == n && adjoints.length == n;
+        for (int i = 0; i < n; i++) {
+            if (opcodes[i] == ADD || opcodes[i] == MULTIPLY) {
+                assert 0 <= left[i] && left[i] < i && 0 <= right[i] && right[i] < i;
+            } else if (opcodes[i] == VARIABLE) {
+                assert 0 <= left[i] && left[i] < slots;
+            }
+        }
+    }
+
+    /**
+     * Compiles an expression, its variables being assigned slots in
+     * alphabetical order, as given by ExpressionCompiler.variables(expression)
+     *
+     * @param expression the expression to compile
+     * @return a tape for expression
+     */
+    public static GradientTape compile(Expression expression) {
+        return compile(expression, ExpressionCompiler.variables(expression));
+    }
+
+    /**
+     * Compiles an expression
+     *
+     * @param expression the expression to compile
+     * @param slots distinct variable names; variable slots.get(i) is read from
+     *        point[i], and its partial derivative written to gradient[i]
+     * @return a tape for expression
+     * @throws IllegalArgumentException if a variable of expression is not in slots
+     */
+    public static GradientTape compile(Expression expression, List<String> slots) {
+        final Recorder recorder = new Recorder(slots);
+        recorder.record(expression);
+        return recorder.finish(slots.size());
+    }
+
+    /** @return the number of operations on the tape */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * Evaluates the expression
+     *
+     * @param point the values of the variables, by slot; not modified
+     * @return the value of the expression at point, in double arithmetic,
+     *         with operands evaluated left to right
+     */
+    public double eval(double[] point) {
+        forward(point);
+        return values[values.length - 1];
+    }
+
+    /**
+     * Evaluates the expression and its gradient
+     *
+     * @param point the values of the variables, by slot; not modified
+     * @param gradient array at least as long as the slots, receiving in
+     *        gradient[i] the partial derivative of the expression with respect
+     *        to the variable in slot i, at point
+     * @return the value of the expression at point, as eval(point)
+     */
+    public double gradient(double[] point, double[] gradient) {
+        forward(point);
+        Arrays.fill(gradient, 0, slots, 0);
+        Arrays.fill(adjoints, 0);
+        final int last = opcodes.length - 1;
+        adjoints[last] = 1;
+        for (int i = last; i >= 0; i--) {
+            final double adjoint = adjoints[i];
+            switch (opcodes[i]) {
+            case VARIABLE:
+                gradient[left[i]] += adjoint;
+                break;
+            case ADD:
+                adjoints[left[i]] += adjoint;
+                adjoints[right[i]] += adjoint;
+                break;
+            case MULTIPLY:
+                adjoints[left[i]] += adjoint * values[right[i]];
+                adjoints[right[i]] += adjoint * values[left[i]];
+                break;
+            default:
+                // a number has no operands
+            }
+        }
+        return values[last];
+    }
+
+    /** The forward sweep: computes the value of every node at point */
+    private void forward(double[] point) {
+        for (int i = 0; i < opcodes.length; i++) {
+            switch (opcodes[i]) {
+            case VARIABLE:
+                values[i] = point[left[i]];
+                break;
+            case ADD:
+                values[i] = values[left[i]] + values[right[i]];
+                break;
+            case MULTIPLY:
+                values[i] = values[left[i]] * values[right[i]];
+                break;
+            default:
+                // a number keeps the value it was compiled with
+            }
+        }
+    }
+
+    /** Appends the nodes of an expression to a growing tape, each distinct node once */
+    private static final class Recorder implements Expression.Visitor<Integer> {
+        private final Map<String, Integer> slotOf = new HashMap<>();
+        private final Map<Expression, Integer> recorded = new IdentityHashMap<>();
+        private byte[] opcodes = new byte[16];
+        private int[] left = new int[16];
+        private int[] right = new int[16];
+        private double[] values = new double[16];
+        private int size = 0;
+
+        Recorder(List<String> slots) {
+            for (int i = 0; i < slots.size(); i++) {
+                slotOf.put(slots.get(i), i);
+            }
+        }
+
+        /** @return the index on the tape of the node computing expression */
+        int record(Expression expression) {
+            final Integer known = recorded.get(expression);
+            if (known != null) {
+                return known;
+            }
+            final int index = expression.accept(this);
+            recorded.put(expression, index);
+            return index;
+        }
+
+        GradientTape finish(int slots) {
+            return new GradientTape(Arrays.copyOf(opcodes, size), Arrays.copyOf(left, size),
+                    Arrays.copyOf(right, size), Arrays.copyOf(values, size), slots);
+        }
+
+        private int append(byte opcode, int leftOperand, int rightOperand, double value) {
+            if (size == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, 2 * size);
+                left = Arrays.copyOf(left, 2 * size);
+                right = Arrays.copyOf(right, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            opcodes[size] = opcode;
+            left[size] = leftOperand;
+            right[size] = rightOperand;
+            values[size] = value;
+            return size++;
+        }
+
+        @Override public Integer onValue(Value value) {
+            return append(NUMBER, -1, -1, value.value());
+        }
+
+        @Override public Integer onVariable(Variable variable) {
+            final Integer slot = slotOf.get(variable.name());
+            if (slot == null) {
+                throw new IllegalArgumentException("no slot for variable " + variable.name());
+            }
+            return append(VARIABLE, slot, -1, 0);
+        }
+
+        @Override public Integer onAddition(Addition addition) {
+            int sum = record(addition.get(0));
+            for (int i = 1; i < addition.size(); i++) {
+                sum = append(ADD, sum, record(addition.get(i)), 0);
+            }
+            return sum;
+        }
+
+        @Override public Integer onMultiplication(Multiplication multiplication) {
+            int product = record(multiplication.get(0));
+            for (int i = 1; i < multiplication.size(); i++) {
+                product = append(MULTIPLY, product, record(multiplication.get(i)), 0);
+            }
+            return product;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package expressivo;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A hash-consing table for Expression nodes.
+ *
+ * Every variant is created through intern(), so that two structurally
+ * identical expressions built anywhere in the program are the same object
+ * and equals() succeeds on its reference check in the common case.
+ * Nodes are interned by exact structure, not by equals(): numbers are
+ * compared by their exact bits, since equals() only compares them to 5
+ * decimal places, and sums and products by the identity of their operands,
+ * which are canonical themselves.
+ *
+ * The table is a concurrent map, so threads building expressions at once
+ * do not wait for each other. Entries are only weakly reachable from the
+ * table, so nodes that are no longer used by any expression can still be
+ * garbage collected; their entries are removed as the collector reports them.
+ */
+final class Interner {
+
+    // Abstraction Function
+    //   represents the set of canonical expression nodes currently alive,
+    //   the referents of the keys of TABLE
+    //
+    // Representation Invariant
+    //   every key of TABLE maps to itself
+    //   no two live keys of TABLE have identical referents by identical()
+    //
+    // Thread Safety
+    //   TABLE is a concurrent map, and keys are immutable apart from being
+    //   cleared by the collector; a key cleared while in TABLE compares equal
+    //   only to itself, so it is replaced or removed, never returned
+    private static final ConcurrentHashMap<Key, Key> TABLE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Expression> CLEARED = new ReferenceQueue<>();
+
+    private Interner() {
+        // not instantiable
+    }
+
+    /**
+     * Returns the canonical instance identical to an expression
+     *
+     * @param expression a non-null, newly constructed expression node
+     * @return an expression e identical to expression: a number with the same
+     *         bits, a variable with the same name, or a sum or product of the
+     *         same operands; if such a node is already alive it is returned,
+     *         otherwise expression itself becomes the canonical instance
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends Expression> E intern(E expression) {
+        expungeCleared();
+        final Key probe = new Key(expression, null);
+        final Key found = TABLE.get(probe);
+        if (found != null) {
+            final Expression canonical = found.get();
+            if (canonical != null) {
+                // identical expressions are always of the same variant
+                return (E) canonical;
+            }
+        }
+        final Key key = new Key(expression, CLEARED);
+        while (true) {
+            final Key existing = TABLE.putIfAbsent(key, key);
+            if (existing == null) {
+                return expression;
+            }
+            final Expression canonical = existing.get();
+            if (canonical != null) {
+                return (E) canonical;
+            }
+            // the canonical node was collected but its entry not yet removed
+            TABLE.remove(existing, existing);
+        }
+    }
+
+    /** @return the number of canonical nodes currently held */
+    static int size() {
+        expungeCleared();
+        return TABLE.size();
+    }
+
+    /** Removes the entries of nodes the collector has cleared */
+    private static void expungeCleared() {
+        for (Reference<? extends Expression> cleared = CLEARED.poll(); cleared != null; cleared = CLEARED.poll()) {
+            TABLE.remove(cleared, cleared);
+        }
+    }
+
+    /**
+     * @return true if a and b are identical nodes: numbers with the same
+     *         bits, variables with the same name, or sums or products of the
+     *         same operands, by reference
+     */
+    private static boolean identical(Expression a, Expression b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof Value) {
+            return Double.doubleToLongBits(((Value) a).value()) == Double.doubleToLongBits(((Value) b).value());
+        }
+        if (a instanceof Variable) {
+            return ((Variable) a).name().equals(((Variable) b).name());
+        }
+        if (a instanceof Addition) {
+            final Addition sumA = (Addition) a;
+            final Addition sumB = (Addition) b;
+            if (sumA.size() != sumB.size()) {
+                return false;
+            }
+            for (int i = 0; i < sumA.size(); i++) {
+                if (sumA.get(i) != sumB.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final Multiplication productA = (Multiplication) a;
+        final Multiplication productB = (Multiplication) b;
+        if (productA.size() != productB.size()) {
+            return false;
+        }
+        for (int i = 0; i < productA.size(); i++) {
+            if (productA.get(i) != productB.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return a hash code of expression consistent with identical() */
+    private static int identityHash(Expression expression) {
+        if (expression instanceof Value) {
+            return Double.hashCode(((Value) expression).value());
+        }
+        if (expression instanceof Variable) {
+            return ((Variable) expression).name().hashCode();
+        }
+        int result = expression instanceof Addition ? 1 : 2;
+        if (expression instanceof Addition) {
+            final Addition sum = (Addition) expression;
+            for (int i = 0; i < sum.size(); i++) {
+                result = 37*result + System.identityHashCode(sum.get(i));
+            }
+        } else {
+            final Multiplication product = (Multiplication) expression;
+            for (int i = 0; i < product.size(); i++) {
+                result = 37*result + System.identityHashCode(product.get(i));
+            }
+        }
+        return result;
+    }
+
+    /** A weak reference to a node, equal to references to identical nodes */
+    private static final class Key extends WeakReference<Expression> {
+        private final int hash;
+
+        Key(Expression expression, ReferenceQueue<Expression> queue) {
+            super(expression, queue);
+            this.hash = identityHash(expression);
+        }
+
+        @Override public boolean equals(Object thatObject) {
+            if (thatObject == this) {
+                return true;
+            }
+            if (!(thatObject instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) thatObject;
+            if (this.hash != that.hash) {
+                return false;
+            }
+            final Expression mine = this.get();
+            final Expression theirs = that.get();
+            return mine != null && theirs != null && identical(mine, theirs);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+}
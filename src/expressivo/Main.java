@@ -4,110 +4,126 @@
 package expressivo;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /**
  * Console interface to the expression system.
- * 
+ *
  * <p>PS3 instructions: you are free to change this user interface class.
  */
 public class Main {
-    
-    
+
+    /** Size of the input and output buffers in batch mode */
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
     /**
      * Read expression and command inputs from the console and output results.
      * An empty input terminates the program.
-     * @param args unused
-     * @throws IOException if there is an error reading the input
+     *
+     * With arguments --batch [in [out]], runs without prompts instead: reads
+     * every line of the file in (or standard input if absent or "-"), skipping
+     * empty lines, and writes one output line per input line to the file out
+     * (or standard output if absent or "-"). Output is buffered, and flushed
+     * only when the input has no more lines ready, and at the end.
+     *
+     * With arguments --parallel [in [out]], runs as in batch mode, with the
+     * same output, but runs lines on all processors at once.
+     *
+     * With arguments --serve [port], runs as a server on the loopback address
+     * and the given port (or any free port if absent or 0), printing the port
+     * it listens on: each connection runs as a batch of its own, with its own
+     * current expression, until the client closes it.
+     *
+     * @param args unused, or the batch or server mode arguments
+     * @throws IOException if there is an error reading the input or writing the output
      */
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            batch(args.length > 1 ? args[1] : "-", args.length > 2 ? args[2] : "-", 1);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--parallel")) {
+            batch(args.length > 1 ? args[1] : "-", args.length > 2 ? args[2] : "-",
+                    Runtime.getRuntime().availableProcessors());
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : 0);
+            return;
+        }
+
         final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-        Optional<String> currentExpression = Optional.empty();
-        
+        final Session session = new Session();
+
         while (true) {
             System.out.print("> ");
             final String input = in.readLine();
-            
-            if (input.isEmpty()) {
+
+            if (input == null || input.isEmpty()) {
                 return; // exits the program
             }
-            
-            try {
-                final String output;
-                
-                if (input.startsWith(DIFFERENTIATE_PREFIX)) {
-                    final String variable = parseDifferentiate(input);
-                    output = Commands.differentiate(currentExpression.get(), variable);
-                    currentExpression = Optional.of(output);
-                } else if (input.startsWith(SIMPLIFY_PREFIX)) {
-                    final Map<String,Double> environment = parseSimpify(input);
-                    output = Commands.simplify(currentExpression.get(), environment);
-                    // ... but don't change currentExpression
-                } else {
-                    final Expression expression = Expression.parse(input);
-                    output = expression.toString();
-                    currentExpression = Optional.of(output);
-                }
-                
-                System.out.println(output);
-            } catch (NoSuchElementException nse) {
-                // currentExpression was empty
-                System.out.println("must enter an expression before using this command");
-            } catch (RuntimeException re) {
-                System.out.println(re.getClass().getName() + ": " + re.getMessage());
-            }
+
+            System.out.println(session.execute(input));
         }
     }
- 
-    private static final String DIFFERENTIATE_PREFIX = "!d/d";
-    private static final String VARIABLE = "[A-Za-z]+";
-    private static final String DIFFERENTIATE = DIFFERENTIATE_PREFIX + "(" + VARIABLE + ") *";
 
-    private static String parseDifferentiate(final String input) {
-        final Matcher commandMatcher = Pattern.compile(DIFFERENTIATE).matcher(input);
-        if (!commandMatcher.matches()) {
-            throw new CommandSyntaxException("usage: !d/d must be followed by a variable name");
+    private static void serve(int port) throws IOException {
+        try (CommandServer server = new CommandServer(port)) {
+            System.out.println("listening on port " + server.port());
+            server.serve();
         }
-
-        final String variable = commandMatcher.group(1);
-        return variable;
     }
-    
-    private static final String SIMPLIFY_PREFIX = "!simplify";
-    private static final String ASSIGNMENT = "(" + VARIABLE + ") *= *([^ ]+)";
-    private static final String SIMPLIFY = SIMPLIFY_PREFIX + "( +" + ASSIGNMENT + ")* *";    
 
-    private static Map<String,Double> parseSimpify(final String input) {
-        final Matcher commandMatcher = Pattern.compile(SIMPLIFY).matcher(input);
-        if (!commandMatcher.matches()) {
-            throw new CommandSyntaxException("usage: !simplify var1=val1 var2=val2 ...");
-        }
-        
-        final Map<String,Double> environment = new HashMap<>();
-        final Matcher argumentMatcher = Pattern.compile(ASSIGNMENT).matcher(input);
-        while (argumentMatcher.find()) {
-            final String variable = argumentMatcher.group(1);
-            final double value = Double.valueOf(argumentMatcher.group(2));
-            environment.put(variable, value);
+    private static void batch(String inName, String outName, int workers) throws IOException {
+        try (BufferedReader in = inName.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in), BATCH_BUFFER_SIZE)
+                    : Files.newBufferedReader(Paths.get(inName), StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(outName.equals("-")
+                    ? new OutputStreamWriter(System.out)
+                    : Files.newBufferedWriter(Paths.get(outName), StandardCharsets.UTF_8), BATCH_BUFFER_SIZE)) {
+            if (workers > 1) {
+                BatchPipeline.run(in, out, workers);
+            } else {
+                runBatch(in, out);
+            }
         }
+    }
 
-        // un-comment the following line to print the environment after each !simplify command
-        //System.out.println(environment);
-        return environment;
+    /**
+     * Runs every line of in through one session, writing the outputs to out
+     * @param in input lines; empty lines are skipped
+     * @param out receives one output line per non-empty input line; flushed
+     *        whenever in has no input ready, and at the end
+     * @throws IOException if there is an error reading in or writing out
+     */
+    static void runBatch(BufferedReader in, Writer out) throws IOException {
+        final Session session = new Session();
+        for (String input = in.readLine(); input != null; input = in.readLine()) {
+            if (!input.isEmpty()) {
+                out.write(session.execute(input));
+                out.write(System.lineSeparator());
+            }
+            if (!in.ready()) {
+                // about to wait for input, so let whoever reads our output catch up
+                out.flush();
+            }
+        }
+        out.flush();
     }
-    
+
     public static class CommandSyntaxException extends RuntimeException {
         private static final long serialVersionUID = 1;
         public CommandSyntaxException(String message) {
             super(message);
         }
     }
-    
+
 }
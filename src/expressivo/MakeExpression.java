@@ -0,0 +1,174 @@
+package expressivo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import expressivo.parser.ExpressionBaseListener;
+import expressivo.parser.ExpressionParser;
+import expressivo.parser.ExpressionParser.ProductContext;
+import expressivo.parser.ExpressionParser.RootContext;
+import expressivo.parser.ExpressionParser.SumContext;
+
+/**
+ * Builds an Expression from the rules of the Expression grammar as they are
+ * entered and exited.
+ *
+ * Operands are kept on a stack rather than read back from the children of
+ * each rule context, so the same listener works both when walking a complete
+ * parse tree and when attached to the parser while it is still parsing.
+ * In the latter case, errorListener() must also be attached to the lexer and
+ * parser (and bailErrorStrategy() used instead of BailErrorStrategy): once a
+ * syntax error is reported the rules being parsed are still exited as the
+ * parser unwinds, and those exits are then ignored.
+ */
+class MakeExpression extends ExpressionBaseListener {
+    private final List<Expression> stack = new ArrayList<>();
+    private final Deque<Integer> marks = new ArrayDeque<>();
+    private boolean failed = false;
+
+    // Abstraction Function
+    //   stack holds the expressions built for the rules exited so far
+    //   and not yet combined into an enclosing rule, in input order;
+    //   marks holds, for each sum or product rule being parsed, the
+    //   stack size when that rule was entered
+    //
+    //   failed is true if a syntax error has been reported, after which
+    //   stack and marks no longer change
+    //
+    // Representation Invariant
+    //   marks is non-increasing from top to bottom, and every mark <= stack.size()
+
+    /**
+     * @return an error listener which, once it is told of a syntax error,
+     *         makes this ignore the rest of the parse
+     */
+    public ANTLRErrorListener errorListener() {
+        return new BaseErrorListener() {
+            @Override public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                    int line, int charPositionInLine, String msg, RecognitionException e) {
+                failed = true;
+            }
+        };
+    }
+
+    /**
+     * @return an error strategy which, like BailErrorStrategy, cancels the
+     *         parse at the first syntax error, and makes this ignore the rest
+     *         of the parse
+     */
+    public ANTLRErrorStrategy bailErrorStrategy() {
+        return new BailErrorStrategy() {
+            @Override public void recover(Parser recognizer, RecognitionException e) {
+                failed = true;
+                super.recover(recognizer, e);
+            }
+
+            @Override public Token recoverInline(Parser recognizer) {
+                failed = true;
+                return super.recoverInline(recognizer);
+            }
+        };
+    }
+
+    /** Forgets everything parsed so far, so this can build another expression */
+    public void reset() {
+        stack.clear();
+        marks.clear();
+        failed = false;
+    }
+
+    /**
+     * @return the expression built for the root rule
+     * @throws IllegalStateException if the whole input has not been parsed yet
+     */
+    public Expression getExpression() {
+        if (failed || stack.size() != 1 || !marks.isEmpty()) {
+            throw new IllegalStateException("no expression has been parsed");
+        }
+        return stack.get(0);
+    }
+
+    @Override public void exitRoot(RootContext context) {
+        if (failed) {
+            return;
+        }
+        assert stack.size() == 1;
+    }
+
+    @Override public void enterSum(SumContext context) {
+        if (failed) {
+            return;
+        }
+        marks.push(stack.size());
+    }
+
+    @Override public void exitSum(SumContext context) {
+        if (failed) {
+            return;
+        }
+        final Expression[] terms = popOperands();
+        if (terms.length > 1) {
+            stack.add(Addition.of(terms));
+        } else {
+            stack.add(terms[0]);
+        }
+    }
+
+    @Override public void enterProduct(ProductContext context) {
+        if (failed) {
+            return;
+        }
+        marks.push(stack.size());
+    }
+
+    @Override public void exitProduct(ProductContext context) {
+        if (failed) {
+            return;
+        }
+        final Expression[] factors = popOperands();
+        if (factors.length > 1) {
+            stack.add(Multiplication.of(factors));
+        } else {
+            stack.add(factors[0]);
+        }
+    }
+
+    @Override public void visitTerminal(TerminalNode node) {
+        if (failed) {
+            return;
+        }
+        final Token token = node.getSymbol();
+        switch (token.getType()) {
+        case ExpressionParser.NUMBER:
+            // numbers too large for a double are clamped, as in Value.addExpr
+            stack.add(Value.of(Math.min(Double.parseDouble(token.getText()), Double.MAX_VALUE)));
+            break;
+        case ExpressionParser.VARIABLE:
+            stack.add(Variable.of(token.getText()));
+            break;
+        default:
+            // operators, parentheses and EOF carry no operand
+        }
+    }
+
+    /** Removes and returns the operands pushed since the innermost open rule was entered */
+    private Expression[] popOperands() {
+        final int start = marks.pop();
+        final List<Expression> operands = stack.subList(start, stack.size());
+        final Expression[] result = operands.toArray(new Expression[operands.size()]);
+        operands.clear();
+        return result;
+    }
+}
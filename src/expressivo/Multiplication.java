@@ -1,78 +1,156 @@
 package expressivo;
 
+import java.util.Arrays;
 import java.util.Map;
 
-public class Multiplication implements Expression{
-	 private final Expression left;
-	    private final Expression right;
+/**
+ * An immutable type representing a multiplication expression
+ * of two or more factors, grouped from left to right
+ */
+public class Multiplication implements Expression {
+    private final Expression[] factors;
+    private final int hash;
 
-	    // Abstraction Function
-	    //   represents a multiplication expression made up of
-	    //   two subexpressions
-	    //
-	    // Representation Invariant
-	    //   The left and right are non-null immutable expressions
-	    //
-	    // Safety From Exposure
-	    //   - All fields are private and final
-	    //   - left and right are required to be immutable
-	    //   - Multiplication shares its rep with other implementations
-	    //     but they do not modify it
-	    
-	    private void checkRep() {
-	        assert left != null;
-	        assert right != null;
-	    }
-	    public Multiplication(Expression left, Expression right) {
-	        this.left = left;
-	        this.right = right;
-	        checkRep();
-	    }
-	@Override
-	public Expression addExpr(Expression e) {
-		 if (e.equals(new Value(0))) {
-	            return this;
-	        }
-	        if (e.equals(this)) {
-	            return this.multiplyExpr(new Value(2));
-	        }
-	        return new Addition(this, e);
-	}
+    // Abstraction Function
+    //   represents the product ((factors[0])*(factors[1]))*...*(factors[n-1]),
+    //   grouped from left to right. A product nested as the left factor of
+    //   another product is flattened into its factors; a product nested
+    //   anywhere else keeps its grouping as a single factor
+    //
+    // Representation Invariant
+    //   factors.length >= 2
+    //   factors contains non-null immutable expressions
+    //   factors[0] is not a Multiplication
+    //   hash is the hash code of the left-grouped binary products,
+    //     h(f0) = f0.hashCode()
+    //     h(f0..fk) = 37*(37 + h(f0..fk-1)) + fk.hashCode()
+    //
+    // Safety From Exposure
+    //   - All fields are private and final
+    //   - factors is never returned, and is only shared with callers
+    //     of the package-private constructor, which hand it over
+    //   - the elements of factors are immutable
+    //   - Multiplication shares its rep with other implementations
+    //     but they do not modify it
 
-	@Override
-	public Expression multiplyExpr(Expression e) {
-		 Value zero = new Value(0);
-	        if (e.equals(zero)) {
-	            return zero;
-	        }
-	        if (e.equals(new Value(1))) {
-	            return this;
-	        }
-	        return new Multiplication(this, e);
-	}
+    private void checkRep() {
+        assert factors.length >= 2;
+        assert !(factors[0] instanceof Multiplication);
+        for (Expression factor : factors) {
+            assert factor != null;
+        }
+    }
+    Multiplication(Expression left, Expression right) {
+        this(append(left, right));
+    }
+    /**
+     * @param factors two or more non-null factors, grouped from left to right,
+     *        the first of which is not a Multiplication; the array is owned
+     *        by the new product and must not be modified
+     */
+    Multiplication(Expression[] factors) {
+        this.factors = factors;
 
-	@Override
-	public Expression addVariable(String variable) {
-		assert variable != null && variable != "";
-        
-        return new Addition(new Variable(variable), this);
-	}
+        int result = factors[0].hashCode();
+        for (int i = 1; i < factors.length; i++) {
+            result = 37*(37 + result) + factors[i].hashCode();
+        }
+        this.hash = result;
+        checkRep();
+    }
+    /**
+     * @param left non-null expression
+     * @param right non-null expression
+     * @return the canonical product (left)*(right), not simplified
+     */
+    static Multiplication of(Expression left, Expression right) {
+        return Interner.intern(new Multiplication(left, right));
+    }
+    /**
+     * @param factors two or more non-null expressions; the array is not
+     *        modified or retained
+     * @return the canonical product ((factors[0])*(factors[1]))*...*(factors[n-1]),
+     *         grouped from left to right, not simplified
+     */
+    static Multiplication of(Expression... factors) {
+        final Expression first = factors[0];
+        final Expression[] leading = first instanceof Multiplication
+                ? ((Multiplication) first).factors
+                : new Expression[] { first };
+        final Expression[] flat = Arrays.copyOf(leading, leading.length + factors.length - 1);
+        System.arraycopy(factors, 1, flat, leading.length, factors.length - 1);
+        return Interner.intern(new Multiplication(flat));
+    }
 
-	@Override
-	public Expression multiplyVariable(String variable) {
-		 assert variable != null && variable != "";
-	        
-	    return new Multiplication(new Variable(variable), this);
-	}
-	@Override public String toString() {
-        String leftString = this.left.toString();
-        String rightString = this.right.toString();
-        leftString = "(" + leftString + ")";
-        rightString = "(" + rightString + ")";
+    private static Expression[] append(Expression left, Expression right) {
+        if (left instanceof Multiplication) {
+            final Expression[] leftFactors = ((Multiplication) left).factors;
+            final Expression[] flat = Arrays.copyOf(leftFactors, leftFactors.length + 1);
+            flat[leftFactors.length] = right;
+            return flat;
+        }
+        return new Expression[] { left, right };
+    }
+    /** @return the number of factors of this product, at least 2 */
+    public int size() {
+        return factors.length;
+    }
+    /**
+     * @param i index of a factor, 0 <= i < size()
+     * @return the i-th factor of this product, read left-to-right
+     */
+    public Expression get(int i) {
+        return factors[i];
+    }
+    @Override public <R> R accept(Visitor<R> visitor) {
+        return visitor.onMultiplication(this);
+    }
+    @Override public Expression addExpr(Expression e) {
+        if (e.isZero()) {
+            return this;
+        }
+        if (e.equals(this)) {
+            return this.multiplyExpr(Value.TWO);
+        }
+        return Addition.of(this, e);
+    }
+    @Override public Expression multiplyExpr(Expression e) {
+        if (e.isZero()) {
+            return Value.ZERO;
+        }
+        if (e.isOne()) {
+            return this;
+        }
+        return Multiplication.of(this, e);
+    }
+    @Override public Expression addVariable(String variable) {
+        assert variable != null && variable != "";
+
+        return Addition.of(Variable.of(variable), this);
+    }
+    @Override public Expression multiplyVariable(String variable) {
+        assert variable != null && variable != "";
+
+        return Multiplication.of(Variable.of(variable), this);
+    }
+    @Override public void appendTo(StringBuilder builder) {
+        for (int i = 1; i < factors.length; i++) {
+            builder.append('(');
+        }
+        factors[0].appendTo(builder);
+        for (int i = 1; i < factors.length; i++) {
+            builder.append(")*(");
+            factors[i].appendTo(builder);
+            builder.append(')');
+        }
+    }
+    @Override public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        appendTo(builder);
 
         checkRep();
-        return leftString + "*" + rightString;
-    }  
+        return builder.toString();
+    }
     @Override public boolean equals(Object thatObject) {
         if (thatObject == this) {
             return true;
@@ -81,20 +159,14 @@ public class Multiplication implements Expression{
             return false;
         }
         Multiplication thatMult = (Multiplication) thatObject;
+        if (this.hash != thatMult.hash) {
+            return false;
+        }
 
         checkRep();
-        return this.toString().equals(thatMult.toString());
+        return Arrays.equals(this.factors, thatMult.factors);
     }
     @Override public int hashCode() {
-        final int prime = 37;
-        int result = 1;
-        
-        result = prime*result + this.left.hashCode();
-        result = prime*result + this.right.hashCode();
-
-        checkRep();
-        return result;
+        return hash;
     }
-
-
 }
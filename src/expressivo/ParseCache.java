@@ -0,0 +1,102 @@
+package expressivo;
+
+/**
+ * A thread-safe cache of parse results, keyed by input text, bounded both in
+ * number of entries and in approximate memory retained, and evicting the
+ * least recently used entries first.
+ *
+ * Clients often send the same expression text again and again, and the cache
+ * lets them skip parsing it every time after the first. Invalid inputs are
+ * cached too, since their results are as immutable as valid ones.
+ */
+public final class ParseCache {
+
+    /** Default bound on the number of entries of the shared cache */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+    /** Default bound on the approximate bytes retained by the shared cache */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /** Approximate bytes retained per entry, besides its input and expression */
+    private static final long ENTRY_BYTES = 96;
+
+    /**
+     * Approximate bytes retained per character of input: two for the key and
+     * the rest for the expression parsed from it
+     */
+    private static final long BYTES_PER_CHAR = 2 + 16;
+
+    private static final ParseCache SHARED = new ParseCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+    private final BoundedCache<String, ParseResult> cache;
+
+    // Abstraction Function
+    //   represents the map from input to parse result held by cache
+    //
+    // Representation Invariant
+    //   every entry (input, result) of cache has result equal to Expression.tryParse(input)
+    //
+    // Safety From Exposure
+    //   - cache is private and never returned; parse results are immutable
+
+    /**
+     * Make an empty cache.
+     * @param maxEntries bound on the number of entries, >= 16
+     * @param maxBytes bound on the approximate bytes retained by entries, > 0;
+     *        inputs too long to fit a sixteenth of it are parsed but not cached
+     * @throws IllegalArgumentException if a bound is too small
+     */
+    public ParseCache(int maxEntries, long maxBytes) {
+        this.cache = new BoundedCache<>(maxEntries, maxBytes);
+    }
+
+    /** @return the cache shared by Commands and the console */
+    public static ParseCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Parse an expression, or find the result of parsing the same input before.
+     * @param input the input to parse
+     * @return the same result as Expression.tryParse(input)
+     */
+    public ParseResult parse(String input) {
+        final ParseResult cached = cache.get(input);
+        if (cached != null) {
+            return cached;
+        }
+        // two threads missing on the same input at once both parse it
+        final ParseResult parsed = Expression.tryParse(input);
+        cache.put(input, parsed, ENTRY_BYTES + BYTES_PER_CHAR * input.length());
+        return parsed;
+    }
+
+    /** @return the number of lookups that found their input cached */
+    public long hits() {
+        return cache.hits();
+    }
+
+    /** @return the number of lookups that had to parse their input */
+    public long misses() {
+        return cache.misses();
+    }
+
+    /** @return the number of entries evicted to stay within the bounds */
+    public long evictions() {
+        return cache.evictions();
+    }
+
+    /** @return the number of entries cached */
+    public int size() {
+        return cache.size();
+    }
+
+    /** Remove every entry, leaving the counts unchanged */
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override public String toString() {
+        return "ParseCache[" + cache + "]";
+    }
+}
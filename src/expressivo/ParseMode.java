@@ -0,0 +1,94 @@
+package expressivo;
+
+/**
+ * The ways an expression can be parsed. Every mode accepts the same language,
+ * that of Expression.g4, and builds equal expressions for equal input;
+ * they differ only in speed and memory use.
+ */
+public enum ParseMode {
+
+    /**
+     * The generated ANTLR parser builds a complete parse tree,
+     * which MakeExpression then walks to build the expression.
+     */
+    ANTLR {
+        @Override public Expression parse(CharSequence input) {
+            return AntlrParser.parse(input, false);
+        }
+
+        @Override public ParseResult tryParse(CharSequence input) {
+            return AntlrParser.tryParse(input, false);
+        }
+    },
+
+    /**
+     * The generated ANTLR parser builds the expression while it parses, with
+     * MakeExpression attached as a parse listener. No parse tree is built and
+     * tokens are discarded once consumed, so only the rules currently being
+     * parsed are ever in memory: use for very large expressions.
+     */
+    STREAMING {
+        @Override public Expression parse(CharSequence input) {
+            return AntlrParser.parse(input, true);
+        }
+
+        @Override public ParseResult tryParse(CharSequence input) {
+            return AntlrParser.tryParse(input, true);
+        }
+    },
+
+    /**
+     * A hand-written recursive-descent parser reads the characters directly
+     * and builds the expression as it goes, with no tokens or parse tree.
+     * Fastest, especially for short expressions.
+     */
+    DESCENT {
+        @Override public Expression parse(CharSequence input) {
+            return DescentParser.parse(input);
+        }
+
+        @Override public ParseResult tryParse(CharSequence input) {
+            return DescentParser.tryParse(input);
+        }
+    };
+
+    /**
+     * Parse an expression.
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @return expression AST for the input
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public abstract Expression parse(CharSequence input);
+
+    /**
+     * Parse an expression, reporting invalid input without throwing.
+     * The input is parsed by this mode's parser alone, as parse() would
+     * parse it, and the parser records its first error rather than throwing
+     * an exception with a stack trace for it.
+     * @param input expression to parse, as defined in the PS3 handout; not retained
+     * @return the expression AST for the input, or where and why input is invalid
+     */
+    public abstract ParseResult tryParse(CharSequence input);
+
+    /** Representative inputs, covering every decision of the grammar */
+    private static final String[] WARM_UP_CORPUS = {
+        "0", "3.14159", ".5", "x", "x + 1", "2*x", "x*y*z + x*y + x + 1",
+        "(x + 1)*(y + 2)", "((x))", "3*(x + 4*(y + 5*(z + 6)))", "a*a*a + 0.25*b + (c)",
+    };
+
+    /**
+     * Warms up the ANTLR parsers by parsing a built-in corpus of expressions.
+     * The lexer and parser share their prediction caches (DFAs) across all
+     * parses, so once warmed they no longer run the slower ATN simulation
+     * for the inputs seen during service. Warming up is opt-in: nothing
+     * calls this, since Main and Commands parse with DESCENT, which has no
+     * caches to warm. Programs that parse with ANTLR or STREAMING should call
+     * it once at startup.
+     */
+    public static void warmUp() {
+        for (String input : WARM_UP_CORPUS) {
+            ANTLR.parse(input);
+            STREAMING.parse(input);
+        }
+    }
+}
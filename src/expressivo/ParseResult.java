@@ -0,0 +1,103 @@
+package expressivo;
+
+/**
+ * An immutable result of parsing an expression: either the expression,
+ * or where and why the input is invalid.
+ *
+ * Invalid input is common in practice, so it is reported as a value rather
+ * than as an exception, and the exception thrown by expression() for invalid
+ * input does not record a stack trace.
+ */
+public final class ParseResult {
+    private final Expression expression;
+    private final int errorIndex;
+    private final String errorMessage;
+
+    // Abstraction Function
+    //   represents a successful parse yielding expression if it is non-null,
+    //   otherwise a failed parse whose first error is described by
+    //   errorMessage, found at index errorIndex of the input
+    //
+    // Representation Invariant
+    //   exactly one of expression and errorMessage is null
+    //   errorIndex == -1 iff expression != null
+    //
+    // Safety From Exposure
+    //   - all fields are private and final, and immutable
+
+    private ParseResult(Expression expression, int errorIndex, String errorMessage) {
+        this.expression = expression;
+        this.errorIndex = errorIndex;
+        this.errorMessage = errorMessage;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert (expression == null) != (errorMessage == null);
+        assert (errorIndex == -1) == (expression != null);
+    }
+
+    /**
+     * @param expression non-null expression parsed
+     * @return a successful result yielding expression
+     */
+    static ParseResult success(Expression expression) {
+        return new ParseResult(expression, -1, null);
+    }
+
+    /**
+     * @param errorIndex index in the input of the first error, >= 0
+     * @param errorMessage non-null description of the first error
+     * @return a failed result
+     */
+    static ParseResult failure(int errorIndex, String errorMessage) {
+        return new ParseResult(null, errorIndex, errorMessage);
+    }
+
+    /** @return true if and only if the input was a valid expression */
+    public boolean isValid() {
+        return expression != null;
+    }
+
+    /**
+     * @return the expression parsed
+     * @throws IllegalArgumentException if the input was invalid, its message
+     *         giving the error; the exception carries no stack trace
+     */
+    public Expression expression() {
+        if (expression == null) {
+            throw new InvalidExpressionException(toString());
+        }
+        return expression;
+    }
+
+    /** @return the index in the input of the first error, or -1 if the input was valid */
+    public int errorIndex() {
+        return errorIndex;
+    }
+
+    /** @return a description of the first error, or null if the input was valid */
+    public String errorMessage() {
+        return errorMessage;
+    }
+
+    @Override public String toString() {
+        if (isValid()) {
+            return expression.toString();
+        }
+        return "invalid expression: " + errorMessage + " at index " + errorIndex;
+    }
+
+    private static final class InvalidExpressionException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1;
+
+        InvalidExpressionException(String message) {
+            super(message);
+        }
+
+        @Override public synchronized Throwable fillInStackTrace() {
+            // the message says all there is to know about invalid input
+            return this;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package expressivo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A mutable polynomial in canonical form: a sum of monomials with
+ * nonnegative coefficients, each monomial appearing at most once.
+ *
+ * An expression is normalised into a polynomial in a single pass over its
+ * tree; like terms are combined in expected constant time per term by
+ * hashing their monomials, so that for example x + x + 3*x becomes 5*x.
+ */
+final class Polynomial {
+
+    /**
+     * The variables of one normalisation, each interned to a small index
+     * so monomials can be stored as arrays of exponents.
+     */
+    private static final class Variables {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        // Representation Invariant
+        //   names.get(indexes.get(v)).equals(v) for every v in indexes
+
+        int indexOf(String name) {
+            Integer index = indexes.get(name);
+            if (index == null) {
+                index = names.size();
+                names.add(name);
+                indexes.put(name, index);
+            }
+            return index;
+        }
+
+        String nameOf(int index) {
+            return names.get(index);
+        }
+    }
+
+    /**
+     * An immutable product of variables, each raised to a power.
+     */
+    private static final class Monomial {
+        private static final Monomial ONE = new Monomial(new int[0]);
+
+        private final int[] exponents;
+        private final int hash;
+
+        // Abstraction Function
+        //   represents the product over i of (variable i)^exponents[i]
+        //
+        // Representation Invariant
+        //   exponents[i] >= 0 for all i
+        //   exponents is empty or its last element is positive,
+        //   so equal monomials have equal arrays
+        //   hash == Arrays.hashCode(exponents)
+
+        private Monomial(int[] exponents) {
+            this.exponents = exponents;
+            this.hash = Arrays.hashCode(exponents);
+        }
+
+        static Monomial of(int variable) {
+            final int[] exponents = new int[variable + 1];
+            exponents[variable] = 1;
+            return new Monomial(exponents);
+        }
+
+        Monomial times(Monomial that) {
+            if (this.exponents.length == 0) {
+                return that;
+            }
+            if (that.exponents.length == 0) {
+                return this;
+            }
+            final int[] longer = this.exponents.length >= that.exponents.length
+                    ? this.exponents : that.exponents;
+            final int[] shorter = longer == this.exponents ? that.exponents : this.exponents;
+            final int[] product = longer.clone();
+            for (int i = 0; i < shorter.length; i++) {
+                product[i] += shorter[i];
+            }
+            return new Monomial(product);
+        }
+
+        int degree() {
+            int degree = 0;
+            for (int exponent : exponents) {
+                degree += exponent;
+            }
+            return degree;
+        }
+
+        @Override public boolean equals(Object thatObject) {
+            if (!(thatObject instanceof Monomial)) {
+                return false;
+            }
+            final Monomial that = (Monomial) thatObject;
+            return this.hash == that.hash && Arrays.equals(this.exponents, that.exponents);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Variables variables;
+    private final Map<Monomial, Double> coefficients = new HashMap<>();
+
+    // Abstraction Function
+    //   represents the sum over (m, c) in coefficients of c*m, the
+    //   variables of m being named by variables; the empty map is 0
+    //
+    // Representation Invariant
+    //   every coefficient is positive and finite
+    //
+    // Safety From Exposure
+    //   - all fields are private
+    //   - variables is shared only with polynomials of the same
+    //     normalisation, which only ever add names to it
+    //   - monomials are immutable and never returned
+
+    private Polynomial(Variables variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * Normalises an expression into canonical form
+     *
+     * @param expression the expression to normalise
+     * @param environment maps variables to nonnegative values; every variable
+     *        of expression found in environment is replaced by its value
+     * @return a polynomial equal to expression after substitution,
+     *         in which like terms have been combined
+     */
+    static Polynomial of(Expression expression, Map<String, Double> environment) {
+        return expression.accept(new Normaliser(new Variables(), environment));
+    }
+
+    /** Builds the polynomial of every node, visiting each node once */
+    private static final class Normaliser implements Expression.Visitor<Polynomial> {
+        private final Variables variables;
+        private final Map<String, Double> environment;
+
+        Normaliser(Variables variables, Map<String, Double> environment) {
+            this.variables = variables;
+            this.environment = environment;
+        }
+
+        @Override public Polynomial onValue(Value value) {
+            return constant(value.value());
+        }
+
+        @Override public Polynomial onVariable(Variable variable) {
+            final Double bound = environment.get(variable.name());
+            if (bound != null) {
+                return constant(bound);
+            }
+            final Polynomial result = new Polynomial(variables);
+            result.add(Monomial.of(variables.indexOf(variable.name())), 1);
+            return result;
+        }
+
+        @Override public Polynomial onAddition(Addition addition) {
+            final Polynomial result = new Polynomial(variables);
+            for (int i = 0; i < addition.size(); i++) {
+                result.addAll(addition.get(i).accept(this));
+            }
+            return result;
+        }
+
+        @Override public Polynomial onMultiplication(Multiplication multiplication) {
+            Polynomial result = multiplication.get(0).accept(this);
+            for (int i = 1; i < multiplication.size(); i++) {
+                result = result.times(multiplication.get(i).accept(this));
+            }
+            return result;
+        }
+
+        private Polynomial constant(double num) {
+            final Polynomial result = new Polynomial(variables);
+            result.add(Monomial.ONE, num);
+            return result;
+        }
+    }
+
+    /** Adds coefficient*monomial to this polynomial */
+    private void add(Monomial monomial, double coefficient) {
+        if (coefficient == 0) {
+            return;
+        }
+        coefficients.merge(monomial, coefficient, Polynomial::sum);
+    }
+
+    private static Double sum(Double a, Double b) {
+        return Math.min(a + b, Double.MAX_VALUE);
+    }
+
+    private void addAll(Polynomial that) {
+        for (Map.Entry<Monomial, Double> term : that.coefficients.entrySet()) {
+            add(term.getKey(), term.getValue());
+        }
+    }
+
+    private Polynomial times(Polynomial that) {
+        final Polynomial product = new Polynomial(variables);
+        for (Map.Entry<Monomial, Double> left : this.coefficients.entrySet()) {
+            for (Map.Entry<Monomial, Double> right : that.coefficients.entrySet()) {
+                product.add(left.getKey().times(right.getKey()),
+                        Math.min(left.getValue() * right.getValue(), Double.MAX_VALUE));
+            }
+        }
+        return product;
+    }
+
+    /**
+     * Converts this polynomial back to an expression
+     *
+     * @return an expression equal to this polynomial: a sum of terms in
+     *         decreasing order of degree, each term being its coefficient
+     *         (omitted if 1) followed by its variables in alphabetical
+     *         order, grouped from left to right, e.g. 5*x*x + x*y + 3;
+     *         terms whose coefficient is 0 to 5 decimal places are dropped;
+     *         a single number if this polynomial has no variables
+     */
+    Expression toExpression() {
+        final List<Monomial> monomials = new ArrayList<>(coefficients.keySet());
+        final int[] order = alphabeticalOrder();
+        Collections.sort(monomials, new Comparator<Monomial>() {
+            @Override public int compare(Monomial a, Monomial b) {
+                final int byDegree = Integer.compare(b.degree(), a.degree());
+                if (byDegree != 0) {
+                    return byDegree;
+                }
+                for (int index : order) {
+                    final int byPower = Integer.compare(exponent(b, index), exponent(a, index));
+                    if (byPower != 0) {
+                        return byPower;
+                    }
+                }
+                return 0;
+            }
+        });
+
+        final List<Expression> terms = new ArrayList<>();
+        for (Monomial monomial : monomials) {
+            final Value coefficient = Value.of(coefficients.get(monomial));
+            if (!coefficient.isZero()) {
+                terms.add(termOf(coefficient, monomial, order));
+            }
+        }
+        if (terms.isEmpty()) {
+            return Value.ZERO;
+        }
+        return terms.size() == 1 ? terms.get(0) : Addition.of(terms.toArray(new Expression[terms.size()]));
+    }
+
+    private Expression termOf(Value number, Monomial monomial, int[] order) {
+        final List<Expression> factors = new ArrayList<>();
+        if (!number.isOne() || monomial.exponents.length == 0) {
+            factors.add(number);
+        }
+        for (int index : order) {
+            final Variable variable = Variable.of(variables.nameOf(index));
+            for (int power = exponent(monomial, index); power > 0; power--) {
+                factors.add(variable);
+            }
+        }
+        if (factors.size() == 1) {
+            return factors.get(0);
+        }
+        return Multiplication.of(factors.toArray(new Expression[factors.size()]));
+    }
+
+    private static int exponent(Monomial monomial, int index) {
+        return index < monomial.exponents.length ? monomial.exponents[index] : 0;
+    }
+
+    /** @return the indexes of all variables, ordered by name */
+    private int[] alphabeticalOrder() {
+        final List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < variables.names.size(); i++) {
+            indexes.add(i);
+        }
+        Collections.sort(indexes, Comparator.comparing(variables::nameOf));
+        final int[] order = new int[indexes.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = indexes.get(i);
+        }
+        return order;
+    }
+
+    @Override public String toString() {
+        return toExpression().toString();
+    }
+}
@@ -0,0 +1,134 @@
+package expressivo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import expressivo.Main.CommandSyntaxException;
+
+/**
+ * A mutable session of the console command language: each input line is an
+ * expression, which becomes the current expression, or a command on the
+ * current expression.
+ *
+ *   expression          parse an expression and make it current
+ *   !d/d var            differentiate the current expression, making the result current
+ *   !simplify v=n ...   simplify the current expression, leaving it current
+ */
+final class Session {
+
+    static final String DIFFERENTIATE_PREFIX = "!d/d";
+    static final String SIMPLIFY_PREFIX = "!simplify";
+
+    private static final String VARIABLE = "[A-Za-z]+";
+    private static final String ASSIGNMENT = "(" + VARIABLE + ") *= *([^ ]+)";
+    private static final Pattern DIFFERENTIATE = Pattern.compile(DIFFERENTIATE_PREFIX + "(" + VARIABLE + ") *");
+    private static final Pattern SIMPLIFY = Pattern.compile(SIMPLIFY_PREFIX + "( +" + ASSIGNMENT + ")* *");
+    private static final Pattern ARGUMENT = Pattern.compile(ASSIGNMENT);
+
+    private Optional<String> currentExpression = Optional.empty();
+
+    // Abstraction Function
+    //   represents a session whose current expression is currentExpression,
+    //   if any
+    //
+    // Representation Invariant
+    //   currentExpression, if present, is a valid expression
+    //
+    // Safety From Exposure
+    //   - currentExpression is private, and immutable
+
+    /**
+     * Runs one line of input
+     * @param input an expression or command, not empty
+     * @return the output for input: the expression parsed, the result of the
+     *         command, or a message saying why input failed
+     */
+    String execute(String input) {
+        final Step step = step(currentExpression, input);
+        currentExpression = step.current;
+        return step.output;
+    }
+
+    /** An immutable result of running one line of input */
+    static final class Step {
+        /** the output for the line */
+        final String output;
+        /** the current expression after the line */
+        final Optional<String> current;
+
+        private Step(String output, Optional<String> current) {
+            this.output = output;
+            this.current = current;
+        }
+    }
+
+    /**
+     * @param input an expression or command, not empty
+     * @return true if input is a command on the current expression,
+     *         false if it is an expression
+     */
+    static boolean isCommand(String input) {
+        return input.startsWith(DIFFERENTIATE_PREFIX) || input.startsWith(SIMPLIFY_PREFIX);
+    }
+
+    /**
+     * Runs one line of input, with no side effects
+     * @param current the current expression before input, if any
+     * @param input an expression or command, not empty
+     * @return the output for input, and the current expression after it;
+     *         if input is an expression, the current expression after it
+     *         is input if valid, and current otherwise
+     */
+    static Step step(Optional<String> current, String input) {
+        try {
+            if (input.startsWith(DIFFERENTIATE_PREFIX)) {
+                final String variable = parseDifferentiate(input);
+                final String output = Commands.differentiate(current.get(), variable);
+                return new Step(output, Optional.of(output));
+            } else if (input.startsWith(SIMPLIFY_PREFIX)) {
+                final Map<String,Double> environment = parseSimplify(input);
+                // ... but don't change the current expression
+                return new Step(Commands.simplify(current.get(), environment), current);
+            } else {
+                final ParseResult parsed = ParseCache.shared().parse(input);
+                final String output = parsed.toString();
+                return new Step(output, parsed.isValid() ? Optional.of(output) : current);
+            }
+        } catch (NoSuchElementException nse) {
+            // current was empty
+            return new Step("must enter an expression before using this command", current);
+        } catch (RuntimeException re) {
+            return new Step(re.getClass().getName() + ": " + re.getMessage(), current);
+        }
+    }
+
+    private static String parseDifferentiate(final String input) {
+        final Matcher commandMatcher = DIFFERENTIATE.matcher(input);
+        if (!commandMatcher.matches()) {
+            throw new CommandSyntaxException("usage: !d/d must be followed by a variable name");
+        }
+
+        final String variable = commandMatcher.group(1);
+        return variable;
+    }
+
+    private static Map<String,Double> parseSimplify(final String input) {
+        final Matcher commandMatcher = SIMPLIFY.matcher(input);
+        if (!commandMatcher.matches()) {
+            throw new CommandSyntaxException("usage: !simplify var1=val1 var2=val2 ...");
+        }
+
+        final Map<String,Double> environment = new HashMap<>();
+        final Matcher argumentMatcher = ARGUMENT.matcher(input);
+        while (argumentMatcher.find()) {
+            final String variable = argumentMatcher.group(1);
+            final double value = Double.valueOf(argumentMatcher.group(2));
+            environment.put(variable, value);
+        }
+        return environment;
+    }
+}
@@ -1,19 +1,34 @@
 package expressivo;
 
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
 import java.util.Map;
 
 /**
  * An immutable type representing a non-negative number in an expression
  */
 public class Value implements Expression {
+    
+    // Canonical instances of the integers 0 to 255, shared like Integer.valueOf()
+    private static final Value[] CACHE = new Value[256];
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = Interner.intern(new Value(i));
+        }
+    }
+    /** The number 0 */
+    public static final Value ZERO = CACHE[0];
+    /** The number 1 */
+    public static final Value ONE = CACHE[1];
+    /** The number 2 */
+    public static final Value TWO = CACHE[2];
+    
     private final double num;
+    private final long key;
     // Abstraction Function:
     //   represents a nonnegative decimal number as an expression
     //   
     // Representation Invariant:
     //   0 <= num <= Double.MAX_VALUE
+    //   key == DecimalFormatter.key(num), num quantized to 5 decimal places
     //
     // Safety From Exposure
     //   - num is a private and immutable reference
@@ -23,19 +38,45 @@ public class Value implements Expression {
         assert Double.isFinite(num);
         assert 0 <= num && num <= Double.MAX_VALUE;
     }
-    public Value(double num) {
+    Value(double num) {
         this.num = num;
+        this.key = DecimalFormatter.key(num);
 
         checkRep();
     }
+    /**
+     * @param num a nonnegative finite number
+     * @return the canonical number expression for exactly num
+     */
+    static Value of(double num) {
+        if (num >= 0 && num < CACHE.length && num == (int) num) {
+            return CACHE[(int) num];
+        }
+        return Interner.intern(new Value(num));
+    }
+    /** @return the number this expression represents */
+    public double value() {
+        return this.num;
+    }
+    @Override public <R> R accept(Visitor<R> visitor) {
+        return visitor.onValue(this);
+    }
+    @Override public boolean isZero() {
+        return this.key == 0;
+    }
+    @Override public boolean isOne() {
+        return this.key == ONE.key;
+    }
     
+    @Override public void appendTo(StringBuilder builder) {
+        DecimalFormatter.format(this.num, builder);
+    }
     @Override public String toString() {
-        DecimalFormat myFormatter = new DecimalFormat("###.#####");
-        myFormatter.setRoundingMode(RoundingMode.DOWN);
-        String output = myFormatter.format(this.num);
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder);
 
         checkRep();
-        return output;
+        return builder.toString();
     }
     /** Checks if two Values are equal, correct to 5 decimal places */
     @Override public boolean equals(Object thatObject) {
@@ -46,77 +87,99 @@ public class Value implements Expression {
             return false;
         }
         Value thatValue = (Value) thatObject;
-        double thatNum = Double.parseDouble(thatValue.toString());
-        final double EPSILON = 0.00001;
 
         checkRep();
-        return Math.abs(this.num - thatNum) < EPSILON;
+        return this.key == thatValue.key;
     }
     @Override public int hashCode() {
-        double preciseNum = Double.parseDouble(this.toString());
         final int prime = 37;
         int result = 1;
-        long numLong = Double.doubleToLongBits(preciseNum);
-        int numHash = (int) (numLong ^ (numLong >>> 32));
         
-        result = prime*result + numHash;
-        
-        checkRep();
+        result = prime*result + (int) (key ^ (key >>> 32));
         return result;
     }
 
     @Override public Expression addExpr(Expression e) {
+        if (this.isZero()) {
+            return e;
+        }
+        if (e.isZero()) {
+            return this;
+        }
         if (e.equals(this)) {
             double newNum = this.num * 2;
             checkRep();
             
             if (Double.isInfinite(newNum)) {
-                return new Value(Double.MAX_VALUE);
+                return Value.of(Double.MAX_VALUE);
             }
-            return new Value(newNum);
+            return Value.of(newNum);
         }
-        Value zero = new Value(0.0);
-        if (this.equals(zero)) {
-            return e;
+        if (e instanceof Value) {
+            return Value.of(Math.min(this.num + ((Value) e).num, Double.MAX_VALUE));
         }
-        if (e.equals(zero)) {
-            return this;
+        if (e instanceof Addition) {
+            // fold this into a matching number term of the sum
+            final Addition sum = (Addition) e;
+            for (int i = 0; i < sum.size(); i++) {
+                if (sum.get(i).equals(this)) {
+                    final Expression[] terms = new Expression[sum.size()];
+                    for (int j = 0; j < terms.length; j++) {
+                        terms[j] = j == i ? this.addExpr(sum.get(j)) : sum.get(j);
+                    }
+                    checkRep();
+                    return Addition.of(terms);
+                }
+            }
         }
-        
+        checkRep();
+        return Addition.of(this, e);
     }
     @Override public Expression multiplyExpr(Expression e) {
-        Value zero = new Value(0);
-        Value one = new Value(1);
-        if (this.equals(zero) || e.equals(zero)) {
-            return zero;
+        if (this.isZero() || e.isZero()) {
+            return ZERO;
         }
-        if (this.equals(one)) {
+        if (this.isOne()) {
             checkRep();
             return e;
         }
-        if (e.equals(one)) {
+        if (e.isOne()) {
             return this;
         }
+        if (e instanceof Value) {
+            return Value.of(Math.min(this.num * ((Value) e).num, Double.MAX_VALUE));
+        }
+        if (e instanceof Addition) {
+            // distribute this over the terms of the sum
+            final Addition sum = (Addition) e;
+            final Expression[] terms = new Expression[sum.size()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = this.multiplyExpr(sum.get(i));
+            }
+            checkRep();
+            return Addition.of(terms);
+        }
+        checkRep();
+        return Multiplication.of(this, e);
     }
     @Override public Expression addVariable(String variable) {
         assert variable != null && variable != "";
-        if (this.equals(new Value(0))) {
-            return new Variable(variable);
+        if (this.isZero()) {
+            return Variable.of(variable);
         }
         checkRep();
-        return new Addition(new Variable(variable), this);
+        return Addition.of(Variable.of(variable), this);
     }
     @Override public Expression multiplyVariable(String variable) {
         assert variable != null && variable != "";
-        Value zero = new Value(0);
-        if (this.equals(zero)) {
-            return zero;
+        if (this.isZero()) {
+            return ZERO;
         }
-        if (this.equals(new Value(1))) {
-            return new Variable(variable);
+        if (this.isOne()) {
+            return Variable.of(variable);
         }
 
         checkRep();
-        return new Multiplication(new Variable(variable), this);
+        return Multiplication.of(Variable.of(variable), this);
     }   
 }
\ No newline at end of file
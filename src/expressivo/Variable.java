@@ -28,10 +28,27 @@ public class Variable implements Expression {
         assert id.length() > 0;
         assert id.matches("[a-zA-Z]+");
     }
-    public Variable(String id) {
+    Variable(String id) {
         this.id = id;
         checkRep();
     }
+    /**
+     * @param id non-null non-empty case-sensitive string of letters, a-zA-Z
+     * @return the canonical variable expression named id
+     */
+    static Variable of(String id) {
+        return Interner.intern(new Variable(id));
+    }
+    /** @return the name of this variable */
+    public String name() {
+        return this.id;
+    }
+    @Override public <R> R accept(Visitor<R> visitor) {
+        return visitor.onVariable(this);
+    }
+    @Override public void appendTo(StringBuilder builder) {
+        builder.append(this.id);
+    }
     @Override public String toString() {
         return this.id;
     }
@@ -52,33 +69,32 @@ public class Variable implements Expression {
         return this.id.hashCode();
     }
     @Override public Expression addExpr(Expression e) {
-        if (e.equals(new Value(0))) {
+        if (e.isZero()) {
             return this;
         }
         checkRep();
         return e.addVariable(id);
     }
     @Override public Expression multiplyExpr(Expression e) {
-        Value zero = new Value(0);
-        if (e.equals(zero)) {
-            return zero;
+        if (e.isZero()) {
+            return Value.ZERO;
         }
-        if (e.equals(new Value(1))) {
+        if (e.isOne()) {
             return this;
         }
         checkRep();
         return e.multiplyVariable(this.id);
     }
-    // TODO: have it simplify such that x + x + x = 3*x
+    // Like terms, such as x + x + x = 3*x, are combined by Polynomial
     @Override public Expression addVariable(String variable) {
         assert variable != null && variable != "";
         
-        return new Addition(new Variable(variable), this);
+        return Addition.of(Variable.of(variable), this);
     }
     @Override public Expression multiplyVariable(String variable) {
         assert variable != null && variable != "";
         
-        return new Multiplication(new Variable(variable), this);
+        return Multiplication.of(Variable.of(variable), this);
     }
    
   
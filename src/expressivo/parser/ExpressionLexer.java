@@ -20,20 +20,20 @@ public class ExpressionLexer extends Lexer {
   protected static final PredictionContextCache _sharedContextCache =
     new PredictionContextCache();
   public static final int
-    T__0=1, T__1=2, T__2=3, NUMBER=4, SPACES=5;
+    T__0=1, T__1=2, T__2=3, T__3=4, NUMBER=5, VARIABLE=6, SPACES=7;
   public static String[] modeNames = {
     "DEFAULT_MODE"
   };
 
   public static final String[] ruleNames = {
-    "T__0", "T__1", "T__2", "NUMBER", "SPACES"
+    "T__0", "T__1", "T__2", "T__3", "NUMBER", "VARIABLE", "SPACES"
   };
 
   private static final String[] _LITERAL_NAMES = {
-    null, "'+'", "'('", "')'"
+    null, "'+'", "'*'", "'('", "')'"
   };
   private static final String[] _SYMBOLIC_NAMES = {
-    null, null, null, null, "NUMBER", "SPACES"
+    null, null, null, null, null, "NUMBER", "VARIABLE", "SPACES"
   };
   public static final Vocabulary VOCABULARY = new VocabularyImpl(_LITERAL_NAMES, _SYMBOLIC_NAMES);
 
@@ -107,16 +107,24 @@ public class ExpressionLexer extends Lexer {
   public ATN getATN() { return _ATN; }
 
   public static final String _serializedATN =
-    "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\2\7\37\b\1\4\2\t"+
-      "\2\4\3\t\3\4\4\t\4\4\5\t\5\4\6\t\6\3\2\3\2\3\3\3\3\3\4\3\4\3\5\6\5"+
-      "\25\n\5\r\5\16\5\26\3\6\6\6\32\n\6\r\6\16\6\33\3\6\3\6\2\2\7\3\3\5"+
-      "\4\7\5\t\6\13\7\3\2\4\3\2\62;\3\2\"\" \2\3\3\2\2\2\2\5\3\2\2\2\2\7"+
-      "\3\2\2\2\2\t\3\2\2\2\2\13\3\2\2\2\3\r\3\2\2\2\5\17\3\2\2\2\7\21\3"+
-      "\2\2\2\t\24\3\2\2\2\13\31\3\2\2\2\r\16\7-\2\2\16\4\3\2\2\2\17\20\7"+
-      "*\2\2\20\6\3\2\2\2\21\22\7+\2\2\22\b\3\2\2\2\23\25\t\2\2\2\24\23\3"+
-      "\2\2\2\25\26\3\2\2\2\26\24\3\2\2\2\26\27\3\2\2\2\27\n\3\2\2\2\30\32"+
-      "\t\3\2\2\31\30\3\2\2\2\32\33\3\2\2\2\33\31\3\2\2\2\33\34\3\2\2\2\34"+
-      "\35\3\2\2\2\35\36\b\6\2\2\36\f\3\2\2\2\5\2\26\33\3\b\2\2";
+    "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\2\t;\b\1\4\2\t\2"+
+      "\4\3\t\3\4\4\t\4\4\5\t\5\4\6\t\6\4\7\t\7\4\b\t\b\3\2\3\2\3\3\3\3\3"+
+      "\4\3\4\3\5\3\5\3\6\6\6\33\n\6\r\6\16\6\34\3\6\3\6\7\6!\n\6\f\6\16"+
+      "\6$\13\6\5\6&\n\6\3\6\3\6\6\6*\n\6\r\6\16\6+\5\6.\n\6\3\7\6\7\61\n"+
+      "\7\r\7\16\7\62\3\b\6\b\66\n\b\r\b\16\b\67\3\b\3\b\2\2\t\3\3\5\4\7"+
+      "\5\t\6\13\7\r\b\17\t\3\2\5\3\2\62;\4\2C\\c|\3\2\"\"A\2\3\3\2\2\2\2"+
+      "\5\3\2\2\2\2\7\3\2\2\2\2\t\3\2\2\2\2\13\3\2\2\2\2\r\3\2\2\2\2\17\3"+
+      "\2\2\2\3\21\3\2\2\2\5\23\3\2\2\2\7\25\3\2\2\2\t\27\3\2\2\2\13-\3\2"+
+      "\2\2\r\60\3\2\2\2\17\65\3\2\2\2\21\22\7-\2\2\22\4\3\2\2\2\23\24\7"+
+      ",\2\2\24\6\3\2\2\2\25\26\7*\2\2\26\b\3\2\2\2\27\30\7+\2\2\30\n\3\2"+
+      "\2\2\31\33\t\2\2\2\32\31\3\2\2\2\33\34\3\2\2\2\34\32\3\2\2\2\34\35"+
+      "\3\2\2\2\35%\3\2\2\2\36\"\7\60\2\2\37!\t\2\2\2 \37\3\2\2\2!$\3\2\2"+
+      "\2\" \3\2\2\2\"#\3\2\2\2#&\3\2\2\2$\"\3\2\2\2%\36\3\2\2\2%&\3\2\2"+
+      "\2&.\3\2\2\2\')\7\60\2\2(*\t\2\2\2)(\3\2\2\2*+\3\2\2\2+)\3\2\2\2+"+
+      ",\3\2\2\2,.\3\2\2\2-\32\3\2\2\2-\'\3\2\2\2.\f\3\2\2\2/\61\t\3\2\2"+
+      "\60/\3\2\2\2\61\62\3\2\2\2\62\60\3\2\2\2\62\63\3\2\2\2\63\16\3\2\2"+
+      "\2\64\66\t\4\2\2\65\64\3\2\2\2\66\67\3\2\2\2\67\65\3\2\2\2\678\3\2"+
+      "\2\289\3\2\2\29:\b\b\2\2:\20\3\2\2\2\n\2\34\"%+-\62\67\3\b\2\2";
   public static final ATN _ATN =
     new ATNDeserializer().deserialize(_serializedATN.toCharArray());
   static {
@@ -30,6 +30,16 @@ public interface ExpressionListener extends ParseTreeListener {
    * @param ctx the parse tree
    */
   void exitSum(ExpressionParser.SumContext ctx);
+  /**
+   * Enter a parse tree produced by {@link ExpressionParser#product}.
+   * @param ctx the parse tree
+   */
+  void enterProduct(ExpressionParser.ProductContext ctx);
+  /**
+   * Exit a parse tree produced by {@link ExpressionParser#product}.
+   * @param ctx the parse tree
+   */
+  void exitProduct(ExpressionParser.ProductContext ctx);
   /**
    * Enter a parse tree produced by {@link ExpressionParser#primitive}.
    * @param ctx the parse tree
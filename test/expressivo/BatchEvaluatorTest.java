@@ -0,0 +1,133 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for BatchEvaluator and Commands.simplifyBatch.
+ */
+public class BatchEvaluatorTest {
+
+    // Testing strategy
+    //   Partitions for evaluate: Expression x Map<String, double[]> x double[] -> void
+    //   - expression: number, variable, sum, product, deeply nested
+    //   - product: number times 1, 2 or 3 variables, leading variable,
+    //     number after a variable, nested factor
+    //   - rows: 0, 1, fewer than a chunk, several chunks and a partial chunk
+    //   - columns: exactly the variables, extra columns, longer than results,
+    //     missing a variable, shorter than results
+    //
+    //   Partitions for Commands.simplifyBatch: String x Map<String, double[]> x double[] -> void
+    //   - valid expression, invalid expression
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers number, variable, 0 rows, 1 row
+    public void testEvaluate_Primitives() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[] {4, 5});
+        double[] one = new double[1];
+
+        BatchEvaluator.evaluate(Expression.parse("x"), columns, one);
+        assertEquals("Expected first value of column", 4, one[0], 0);
+        BatchEvaluator.evaluate(Expression.parse("2.5"), columns, one);
+        assertEquals("Expected the number", 2.5, one[0], 0);
+        BatchEvaluator.evaluate(Expression.parse("x*x"), columns, new double[0]);
+    }
+
+    @Test
+    // covers sum, product, nested, several chunks and a partial chunk,
+    //        extra and longer columns
+    public void testEvaluate_ManyRows() {
+        final int rows = 3 * BatchEvaluator.CHUNK + 17;
+        Map<String, double[]> columns = new HashMap<>();
+        double[] x = new double[rows + 5];
+        double[] y = new double[rows];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i * 0.5;
+        }
+        for (int i = 0; i < rows; i++) {
+            y[i] = rows - i;
+        }
+        columns.put("x", x);
+        columns.put("y", y);
+        columns.put("unused", new double[0]);
+        double[] results = new double[rows];
+
+        BatchEvaluator.evaluate(Expression.parse("x*(y + 2*x)*(x + 1 + y*(x + 3)) + y + 7"), columns, results);
+        for (int i = 0; i < rows; i++) {
+            double expected = x[i]*(y[i] + 2*x[i])*(x[i] + 1 + y[i]*(x[i] + 3)) + y[i] + 7;
+            assertEquals("Expected value of row " + i, expected, results[i], 0);
+        }
+    }
+
+    @Test
+    // covers number times 1, 2 or 3 variables, leading variable,
+    //        number after a variable, nested factor
+    public void testEvaluate_Products() {
+        final int rows = BatchEvaluator.CHUNK + 3;
+        Map<String, double[]> columns = new HashMap<>();
+        double[] x = new double[rows];
+        double[] y = new double[rows];
+        double[] z = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = i / 7.0;
+            y[i] = 1.1 + i;
+            z[i] = 3.3 / (i + 1);
+        }
+        columns.put("x", x);
+        columns.put("y", y);
+        columns.put("z", z);
+        double[] results = new double[rows];
+
+        BatchEvaluator.evaluate(Expression.parse(
+                "0.3*x + 0.7*x*y + 1.9*x*y*z + x*y*z + y*0.1*x + x*(y + 1)*z"), columns, results);
+        for (int i = 0; i < rows; i++) {
+            double expected = 0.3*x[i] + 0.7*x[i]*y[i] + 1.9*x[i]*y[i]*z[i] + x[i]*y[i]*z[i]
+                    + y[i]*0.1*x[i] + x[i]*(y[i] + 1)*z[i];
+            assertEquals("Expected value of row " + i, expected, results[i], 0);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers missing a variable
+    public void testEvaluate_MissingColumn() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[] {1});
+        BatchEvaluator.evaluate(Expression.parse("x + y"), columns, new double[1]);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers shorter than results
+    public void testEvaluate_ShortColumn() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[] {1});
+        BatchEvaluator.evaluate(Expression.parse("x"), columns, new double[2]);
+    }
+
+    @Test
+    // covers Commands.simplifyBatch valid expression
+    public void testSimplifyBatch() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[] {0, 1, 2.5});
+        double[] results = new double[3];
+
+        Commands.simplifyBatch("x*x + 3*x + 1", columns, results);
+        assertArrayEquals("Expected each row simplified to a number",
+                new double[] {1, 5, 14.75}, results, 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers Commands.simplifyBatch invalid expression
+    public void testSimplifyBatch_Invalid() {
+        Commands.simplifyBatch("x +", new HashMap<>(), new double[1]);
+    }
+}
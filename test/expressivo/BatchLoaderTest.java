@@ -0,0 +1,81 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for BatchLoader.
+ */
+public class BatchLoaderTest {
+
+    // Testing strategy
+    //   Partitions for load: Path x ObjLongConsumer x int -> long
+    //   - file: empty, one line, many lines
+    //   - lines: valid, invalid, empty, terminated by "\n" or "\r\n", last unterminated
+    //   - window: larger than the file, smaller than the file with lines crossing
+    //     windows, smaller than a line
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers empty file
+    public void testLoad_Empty() throws IOException {
+        final List<ParseResult> results = new ArrayList<>();
+        assertEquals("Expected no lines", 0, BatchLoader.load(write(""), (result, line) -> results.add(result)));
+        assertTrue("Expected no results", results.isEmpty());
+    }
+
+    @Test
+    // covers one line, valid, last unterminated, window larger than the file
+    public void testLoad_OneLine() throws IOException {
+        final List<ParseResult> results = new ArrayList<>();
+        assertEquals("Expected one line", 1,
+                BatchLoader.load(write("x*(y + 2)"), (result, line) -> results.add(result)));
+        assertEquals("Expected expression of the line", Expression.parse("x*(y + 2)"), results.get(0).expression());
+    }
+
+    @Test
+    // covers many lines, valid, invalid and empty, "\n" and "\r\n",
+    //        every window size
+    public void testLoad_ManyLines() throws IOException {
+        final String longLine = "x" + new String(new char[100]).replace("\0", " + y*3");
+        final String[] lines = { "1 + x", "x *", "", "(a + b)*c", longLine, "2.5*z", "3" };
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            text.append(lines[i]).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        final Path file = write(text.toString());
+
+        for (int window : new int[] { 1 << 20, 16, 7, 1 }) {
+            final List<ParseResult> results = new ArrayList<>();
+            final List<Long> numbers = new ArrayList<>();
+            assertEquals("Expected every line", lines.length, BatchLoader.load(file, (result, line) -> {
+                results.add(result);
+                numbers.add(line);
+            }, window));
+            for (int i = 0; i < lines.length; i++) {
+                assertEquals("Expected line numbers in order", i + 1L, (long) numbers.get(i));
+                assertEquals("Expected line " + (i + 1) + " parsed with window " + window,
+                        Expression.tryParse(lines[i]).toString(), results.get(i).toString());
+            }
+        }
+    }
+
+    private static Path write(String text) throws IOException {
+        final Path file = Files.createTempFile("expressions", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+}
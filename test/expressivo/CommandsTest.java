@@ -5,6 +5,13 @@ package expressivo;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
 
 /**
@@ -13,7 +20,19 @@ import org.junit.Test;
 public class CommandsTest {
 
     // Testing strategy
-    //   TODO
+    //   Partitions for simplify: String x Map -> String
+    //   - environment: empty, binds some variables, binds every variable
+    //   - expression: like terms, products of sums, variables not in environment,
+    //     invalid
+    //   Partitions for differentiate: String x String -> String
+    //   - expression: constant, the variable, other variables, sums, products
+    //   - variable: in expression, not in expression, invalid
+    //   Partitions for gradient: String -> Map
+    //   - expression: no variables, one variable, several variables, shared
+    //     subexpressions, invalid
+    //   Partitions for simplifyAll, differentiateAll: List x ... -> List
+    //   - expressions: empty, one, many of mixed length, one invalid
+    //   - parallelism: common pool, 1, > 1
     
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
@@ -21,6 +40,157 @@ public class CommandsTest {
     }
     
     
-    // TODO tests for Commands.differentiate() and Commands.simplify()
+    // Tests for Commands.differentiate()
+    @Test
+    // covers constant, variable in expression, variable not in expression
+    public void testDifferentiate_Simple() {
+        assertEquals("Expected derivative of a constant to be 0",
+                "0", Commands.differentiate("3.5", "x"));
+        assertEquals("Expected derivative of the variable to be 1",
+                "1", Commands.differentiate("x", "x"));
+        assertEquals("Expected derivative of another variable to be 0",
+                "0", Commands.differentiate("y", "x"));
+    }
+    @Test
+    // covers sums, products, other variables
+    public void testDifferentiate_ProductRule() {
+        Map<String,Double> environment = new HashMap<>();
+        
+        assertEquals("Expected sum and product rules",
+                "(2)*(x) + 3",
+                Commands.simplify(Commands.differentiate("x*x + 3*x + 7", "x"), environment));
+        environment.put("y", 2.0);
+        assertEquals("Expected other variables treated as constants",
+                "(4)*(x) + 4",
+                Commands.simplify(Commands.differentiate("x*x*y + y*y*x", "x"), environment));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid variable
+    public void testDifferentiate_InvalidVariable() {
+        Commands.differentiate("x + 1", "x1");
+    }
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid expression
+    public void testDifferentiate_InvalidExpression() {
+        Commands.differentiate("x + ", "x");
+    }
+    
+    
+    // Tests for Commands.gradient()
+    @Test
+    // covers no variables, one variable
+    public void testGradient_Small() {
+        assertEquals("Expected no partial derivatives",
+                Collections.emptyMap(), Commands.gradient("2*3 + 1"));
+        assertEquals("Expected one partial derivative",
+                Collections.singletonMap("x", Commands.differentiate("x*x + 2", "x")),
+                Commands.gradient("x*x + 2"));
+    }
+    @Test
+    // covers several variables, shared subexpressions
+    public void testGradient_SameAsDifferentiate() {
+        final String expression = "(x + y)*(x*z + 2)*(x + y) + z*(x*z + 2) + w";
+        final Map<String,String> gradient = Commands.gradient(expression);
+        assertEquals("Expected every variable, in order",
+                Arrays.asList("w", "x", "y", "z"), new ArrayList<>(gradient.keySet()));
+        for (String variable : gradient.keySet()) {
+            assertEquals("Expected same as differentiate by " + variable,
+                    Commands.differentiate(expression, variable), gradient.get(variable));
+        }
+    }
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid expression
+    public void testGradient_Invalid() {
+        Commands.gradient("x*");
+    }
+    
+    // Tests for Commands.simplify()
+    @Test
+    // covers empty environment, like terms
+    public void testSimplify_LikeTerms() {
+        Map<String,Double> environment = new HashMap<>();
+        
+        assertEquals("Expected like terms combined", 
+                "(5)*(x)", Commands.simplify("x + x + 3*x", environment));
+        assertEquals("Expected products expanded, by decreasing degree", 
+                "(x)*(x) + (2)*(x)", Commands.simplify("x*(x + 1) + x", environment));
+    }
+    @Test
+    // covers environment binding some variables
+    public void testSimplify_SomeBound() {
+        Map<String,Double> environment = new HashMap<>();
+        environment.put("y", 2.5);
+        environment.put("z", 1.0);
+        
+        assertEquals("Expected bound variables substituted", 
+                "(2.5)*(x) + 1", Commands.simplify("x*y + z", environment));
+    }
+    @Test
+    // covers environment binding every variable
+    public void testSimplify_AllBound() {
+        Map<String,Double> environment = new HashMap<>();
+        environment.put("x", 3.0);
+        environment.put("y", 0.5);
+        
+        assertEquals("Expected a single number", 
+                "7.5", Commands.simplify("x*y*2 + (y + 1)*x", environment));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid expression
+    public void testSimplify_Invalid() {
+        Commands.simplify("x + (y", new HashMap<>());
+    }
+    
+    // Tests for Commands.simplifyAll() and Commands.differentiateAll()
+    @Test
+    // covers empty list, one expression
+    public void testAll_Small() {
+        Map<String,Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        
+        assertEquals("Expected empty list", 
+                Collections.emptyList(), Commands.simplifyAll(Collections.emptyList(), environment));
+        assertEquals("Expected one result",
+                Arrays.asList("5"), Commands.simplifyAll(Arrays.asList("x*x + 1"), environment));
+        assertEquals("Expected one result",
+                Arrays.asList("1"), Commands.differentiateAll(Arrays.asList("x + y"), "x"));
+    }
+    @Test
+    // covers many expressions of mixed length, every parallelism
+    public void testAll_Many() {
+        Map<String,Double> environment = new HashMap<>();
+        environment.put("y", 3.0);
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder expression = new StringBuilder("x*y + " + i);
+            for (int j = 0; j < (i % 97 == 0 ? 400 : i % 5); j++) {
+                expression.append(" + x*x*").append(j);
+            }
+            expressions.add(expression.toString());
+        }
+        List<String> simplified = new ArrayList<>();
+        List<String> differentiated = new ArrayList<>();
+        for (String expression : expressions) {
+            simplified.add(Commands.simplify(expression, environment));
+            differentiated.add(Commands.differentiate(expression, "x"));
+        }
+        
+        for (int parallelism : new int[] { 0, 1, 4 }) {
+            assertEquals("Expected simplify of each, in order, with parallelism " + parallelism,
+                    simplified, Commands.simplifyAll(expressions, environment, parallelism));
+            assertEquals("Expected differentiate of each, in order, with parallelism " + parallelism,
+                    differentiated, Commands.differentiateAll(expressions, "x", parallelism));
+        }
+        assertEquals("Expected common pool by default",
+                simplified, Commands.simplifyAll(expressions, environment));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    // covers one invalid expression
+    public void testAll_Invalid() {
+        List<String> expressions = new ArrayList<>(Collections.nCopies(1000, "x + 1"));
+        expressions.set(500, "x + (1");
+        Commands.simplifyAll(expressions, new HashMap<>(), 4);
+    }
     
 }
@@ -0,0 +1,127 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for DerivativeCache.
+ */
+public class DerivativeCacheTest {
+
+    // Testing strategy
+    //   Partitions for differentiate: Expression x String -> Expression
+    //   - expression: number, variable, sum, product, containing a
+    //     subexpression differentiated before, extending a sum differentiated
+    //     before, equal to one differentiated before only to 5 decimal places
+    //   - variable: differentiated by before, not before
+    //   - bound reached: entries, bytes, neither
+    //   Partitions for constructor: int x long -> DerivativeCache
+    //   - bounds: valid, too small
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers number, variable, nothing cached
+    public void testDifferentiate_Leaves() {
+        final DerivativeCache cache = new DerivativeCache(1024, 1 << 20);
+        assertEquals("Expected 0", Value.ZERO, cache.differentiate(Expression.parse("2"), "x"));
+        assertEquals("Expected 1", Value.ONE, cache.differentiate(Expression.parse("x"), "x"));
+        assertEquals("Expected leaves not cached", 0, cache.size());
+    }
+
+    @Test
+    // covers sum, product, repeated expression, variable differentiated by before and not
+    public void testDifferentiate_Repeated() {
+        final DerivativeCache cache = new DerivativeCache(1024, 1 << 20);
+        final Expression f = Expression.parse("x*x*y + 3*x");
+
+        final Expression first = cache.differentiate(f, "x");
+        assertEquals("Expected same as uncached derivative", f.differentiate("x"), first);
+        final long misses = cache.misses();
+        assertTrue("Expected sum and products cached", cache.size() >= 3);
+
+        assertSame("Expected cached derivative", first, cache.differentiate(f, "x"));
+        assertEquals("Expected no more misses", misses, cache.misses());
+
+        assertEquals("Expected same as uncached derivative",
+                f.differentiate("y"), cache.differentiate(f, "y"));
+        assertTrue("Expected other variable differentiated", cache.misses() > misses);
+    }
+
+    @Test
+    // covers expression containing subexpressions differentiated before
+    public void testDifferentiate_Subexpressions() {
+        final DerivativeCache cache = new DerivativeCache(1024, 1 << 20);
+        final Expression f = Expression.parse("(x + y)*(x*x + 2)");
+        cache.differentiate(f, "x");
+        final long hits = cache.hits();
+
+        final Expression sum = Expression.parse("(x + y)*(x*x + 2) + x*y");
+        assertEquals("Expected same as uncached derivative",
+                sum.differentiate("x"), cache.differentiate(sum, "x"));
+        assertEquals("Expected f found, and only the new sum and product differentiated",
+                hits + 1, cache.hits());
+    }
+
+    @Test
+    // covers expression extending a sum differentiated before
+    public void testDifferentiate_ExtendedSum() {
+        final DerivativeCache cache = new DerivativeCache(1024, 1 << 20);
+        final Expression f = Expression.parse("x*x + 3*x*y + y*(x + 1)");
+        cache.differentiate(f, "x");
+        final long hits = cache.hits();
+        final long misses = cache.misses();
+
+        final Expression sum = Expression.parse("x*x + 3*x*y + y*(x + 1) + x*y");
+        assertEquals("Expected same as uncached derivative",
+                sum.differentiate("x"), cache.differentiate(sum, "x"));
+        // sums are flattened, so f is not a term of sum: its terms are found,
+        // but the sum itself and the new term are differentiated
+        assertEquals("Expected the products of f found", hits + 3, cache.hits());
+        assertEquals("Expected the sum and the new product differentiated", misses + 2, cache.misses());
+    }
+
+    @Test
+    // covers expression equal to one differentiated before only to 5 decimal places
+    public void testDifferentiate_CloseNumbers() {
+        final DerivativeCache cache = new DerivativeCache(1024, 1 << 20);
+        cache.differentiate(Expression.parse("x*1.500001"), "x");
+        final Expression close = Expression.parse("100000*(x*1.500009)");
+        final Expression derivative = cache.differentiate(close, "x");
+        assertSame("Expected the derivative of the exact numbers", close.differentiate("x"), derivative);
+        assertEquals("Expected the derivative of the exact numbers", "150000.9", derivative.toString());
+    }
+
+    @Test
+    // covers entries bound reached
+    public void testDifferentiate_EntriesBound() {
+        final DerivativeCache cache = new DerivativeCache(16 * 2, 1 << 20);
+        for (int i = 0; i < 500; i++) {
+            final Expression e = Expression.parse("x*x*" + i + " + y");
+            assertEquals("Expected same as uncached derivative", e.differentiate("x"), cache.differentiate(e, "x"));
+        }
+        assertTrue("Expected at most the bound on entries", cache.size() <= 32);
+        assertTrue("Expected evictions", cache.evictions() > 0);
+    }
+
+    @Test
+    // covers bytes bound reached
+    public void testDifferentiate_BytesBound() {
+        final DerivativeCache cache = new DerivativeCache(1 << 16, 16 * 1024);
+        for (int i = 0; i < 500; i++) {
+            cache.differentiate(Expression.parse("x*y*z*" + i + " + x"), "x");
+        }
+        assertTrue("Expected fewer entries than differentiated", cache.size() < 1000);
+        assertTrue("Expected evictions", cache.evictions() > 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers bounds too small
+    public void testConstructor_TooSmall() {
+        new DerivativeCache(1 << 16, 0);
+    }
+}
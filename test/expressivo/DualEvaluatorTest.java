@@ -0,0 +1,108 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for DualEvaluator and Commands.differentiateAt.
+ */
+public class DualEvaluatorTest {
+
+    // Testing strategy
+    //   Partitions for evaluate: Expression x String x Map<String, Double> x double[] -> void
+    //   - expression: number, variable, sum, product of 2 or more factors, nested
+    //   - variable: in expression, not in expression
+    //   - point: binds exactly the variables, binds extra variables, missing a variable
+    //
+    //   Partitions for Commands.differentiateAt: String x String x Map<String, Double> -> double
+    //   - valid expression, invalid expression, invalid variable
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers number, variable in and not in expression, point binding extra variables
+    public void testEvaluate_Primitives() {
+        Map<String, Double> point = new HashMap<>();
+        point.put("x", 3.0);
+        point.put("y", 5.0);
+        double[] result = new double[2];
+
+        DualEvaluator.evaluate(Expression.parse("2.5"), "x", point, result);
+        assertArrayEquals("Expected number and 0", new double[] {2.5, 0}, result, 0);
+        DualEvaluator.evaluate(Expression.parse("x"), "x", point, result);
+        assertArrayEquals("Expected value and 1", new double[] {3, 1}, result, 0);
+        DualEvaluator.evaluate(Expression.parse("x"), "y", point, result);
+        assertArrayEquals("Expected value and 0", new double[] {3, 0}, result, 0);
+    }
+
+    @Test
+    // covers sum, products of 2 and more factors, nested, point binding exactly the variables
+    public void testEvaluate_Compound() {
+        Map<String, Double> point = new HashMap<>();
+        point.put("x", 2.0);
+        point.put("y", 5.0);
+        double[] result = new double[2];
+
+        DualEvaluator.evaluate(Expression.parse("x*x*y + 3*x + y"), "x", point, result);
+        assertArrayEquals("Expected f = x*x*y + 3*x + y and df/dx = 2*x*y + 3",
+                new double[] {31, 23}, result, 0);
+        DualEvaluator.evaluate(Expression.parse("(x + y)*(x*y + 1)*x"), "y", point, result);
+        assertArrayEquals("Expected f = (x + y)*(x*y + 1)*x and df/dy = (x*y + 1)*x + (x + y)*x*x",
+                new double[] {154, 50}, result, 0);
+    }
+
+    @Test
+    // covers large product, same as symbolic derivative
+    public void testEvaluate_SameAsDifferentiate() {
+        Map<String, Double> point = new HashMap<>();
+        point.put("x", 1.25);
+        point.put("y", 0.5);
+        StringBuilder input = new StringBuilder("x");
+        for (int i = 0; i < 30; i++) {
+            input.append(i % 3 == 0 ? "*(x + y)" : "*x");
+        }
+        double[] result = new double[2];
+
+        DualEvaluator.evaluate(Expression.parse(input.toString()), "x", point, result);
+        assertEquals("Expected value of expression",
+                Double.parseDouble(Commands.simplify(input.toString(), point)), result[0], 1e-9 * Math.abs(result[0]));
+        assertEquals("Expected value of symbolic derivative",
+                Double.parseDouble(Commands.simplify(Commands.differentiate(input.toString(), "x"), point)),
+                result[1], 1e-9 * Math.abs(result[1]));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers point missing a variable
+    public void testEvaluate_MissingVariable() {
+        Map<String, Double> point = new HashMap<>();
+        point.put("x", 1.0);
+        DualEvaluator.evaluate(Expression.parse("x*y"), "x", point, new double[2]);
+    }
+
+    @Test
+    // covers valid expression
+    public void testDifferentiateAt_Valid() {
+        Map<String, Double> point = new HashMap<>();
+        point.put("x", 4.0);
+        assertEquals("Expected d(x*x*x)/dx = 3*x*x", 48, Commands.differentiateAt("x*x*x + 7", "x", point), 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid expression
+    public void testDifferentiateAt_InvalidExpression() {
+        Commands.differentiateAt("x*(", "x", new HashMap<>());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid variable
+    public void testDifferentiateAt_InvalidVariable() {
+        Commands.differentiateAt("x", "", new HashMap<>());
+    }
+}
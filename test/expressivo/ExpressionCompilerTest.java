@@ -0,0 +1,121 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for ExpressionCompiler and the functions it compiles.
+ */
+public class ExpressionCompilerTest {
+
+    // Testing strategy
+    //   Partitions for variables: Expression -> List<String>
+    //   - no variables, repeated variables, several variables
+    //
+    //   Partitions for compile: Expression x List<String> -> CompiledExpression
+    //   - expression: number, variable, sum, product, nested
+    //   - expression small, expression too large for one method, expression
+    //     too deeply nested to generate code for
+    //   - slots: default order, given order, missing a variable
+    //   - compile twice an equal expression, compile expressions equal to
+    //     5 decimal places but not exactly
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers no variables, repeated and several variables
+    public void testVariables() {
+        assertEquals("Expected no variables",
+                Arrays.asList(), ExpressionCompiler.variables(Expression.parse("1 + 2*3")));
+        assertEquals("Expected distinct variables in alphabetical order",
+                Arrays.asList("a", "x", "y"),
+                ExpressionCompiler.variables(Expression.parse("y*x + x*(a + y)")));
+    }
+
+    @Test
+    // covers number, variable, nested sums and products, default order
+    public void testCompile_DefaultSlots() {
+        Expression expression = Expression.parse("2.5*x*(y + 1) + x + 0");
+        CompiledExpression compiled = ExpressionCompiler.compile(expression);
+        
+        assertEquals("Expected value of expression", 
+                2.5*3*(4 + 1) + 3, compiled.eval(new double[] {3, 4}), 0);
+        assertEquals("Expected value of number", 
+                7, ExpressionCompiler.compile(new Value(7)).eval(new double[0]), 0);
+    }
+
+    @Test
+    // covers given order, compiling an equal expression twice
+    public void testCompile_GivenSlots() {
+        List<String> slots = Arrays.asList("y", "unused", "x");
+        CompiledExpression compiled1 = ExpressionCompiler.compile(Expression.parse("x*y + x"), slots);
+        CompiledExpression compiled2 = ExpressionCompiler.compile(Expression.parse("x*y + x"), slots);
+        
+        assertEquals("Expected variables read from their slots", 
+                2*5 + 2, compiled1.eval(new double[] {5, 100, 2}), 0);
+        assertSame("Expected compiled function to be cached", 
+                compiled1, compiled2);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers slots missing a variable
+    public void testCompile_MissingSlot() {
+        ExpressionCompiler.compile(Expression.parse("x*y"), Arrays.asList("x"));
+    }
+
+    @Test
+    // covers expression too large for one method
+    public void testCompile_Large() {
+        StringBuilder input = new StringBuilder("x");
+        double expected = 1;
+        for (int i = 1; i <= 5000; i++) {
+            input.append(" + ").append(i).append("*x*y");
+            expected += i * 2.0;
+        }
+        CompiledExpression compiled = ExpressionCompiler.compile(Expression.parse(input.toString()));
+        
+        assertEquals("Expected value of expression split across methods", 
+                expected, compiled.eval(new double[] {1, 2}), 0);
+    }
+
+    @Test
+    // covers expressions equal to 5 decimal places but not exactly
+    public void testCompile_ExactNumbers() {
+        final CompiledExpression first = ExpressionCompiler.compile(Expression.parse("2.500001*x"));
+        final CompiledExpression second = ExpressionCompiler.compile(Expression.parse("2.500009*x"));
+        
+        assertEquals("Expected first number", 2.500001, first.eval(new double[] {1}), 0);
+        assertEquals("Expected second number, not the first", 2.500009, second.eval(new double[] {1}), 0);
+        assertSame("Expected compiled function reused for the same expression",
+                second, ExpressionCompiler.compile(Expression.parse("2.500009*x")));
+    }
+    
+    @Test
+    // covers expression too deeply nested to generate code for
+    public void testCompile_Deep() {
+        final StringBuilder input = new StringBuilder();
+        final int depth = 1000;
+        for (int i = 0; i < depth; i++) {
+            input.append("x + 1.5*(y + ");
+        }
+        input.append("1");
+        for (int i = 0; i < depth; i++) {
+            input.append(")");
+        }
+        final Expression expression = Expression.tryParse(input).expression();
+        
+        double expected = 1;
+        for (int i = 0; i < depth; i++) {
+            expected = 1 + 1.5 * (1 + expected);
+        }
+        assertEquals("Expected value of deeply nested expression",
+                expected, ExpressionCompiler.compile(expression).eval(new double[] {1, 1}), 1e-9 * expected);
+    }
+}
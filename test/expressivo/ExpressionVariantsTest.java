@@ -95,6 +95,20 @@ public class ExpressionVariantsTest {
        
     }
     @Test
+    // covers value with trailing zeros, values near a truncation boundary
+    public void testToString_ValueTruncated() {
+        assertEquals("Expected trailing zeros to be dropped", 
+                "3.14", new Value(3.1400).toString());
+        assertEquals("Expected decimal digits to be kept", 
+                "0.3", new Value(0.1 + 0.2).toString());
+        assertEquals("Expected number truncated, not rounded", 
+                "1.99999", new Value(1.999999).toString());
+        assertEquals("Expected number correct to 5 decimal places", 
+                "1.00001", new Value(1.00001).toString());
+        assertEquals("Expected no grouping of digits", 
+                "1234567", new Value(1234567).toString());
+    }
+    @Test
     // covers variable
     public void testToString_Variable() {
         Variable varExpr = new Variable("Foo");
@@ -151,6 +165,143 @@ public class ExpressionVariantsTest {
         
     }
 
+    // Tests for Expression.parse()
+    @Test
+    // covers one operator, multiple operators of the same type
+    public void testParse_SameOperators() {
+        Variable x = new Variable("x");
+        Variable y = new Variable("y");
+        Variable z = new Variable("z");
+        
+        assertEquals("Expected a number", 
+                new Value(3.5), Expression.parse("3.5"));
+        assertEquals("Expected a sum",
+                new Addition(new Addition(x, y), z), Expression.parse("x + y + z"));
+        assertEquals("Expected a product grouped from left to right",
+                new Multiplication(new Multiplication(x, y), z), Expression.parse("x*y*z"));
+        assertNotEquals("Expected grouping of products to be kept",
+                new Multiplication(x, new Multiplication(y, z)), Expression.parse("x*y*z"));
+    }
+    @Test
+    // covers multiple operators of different types, grouping
+    public void testParse_MixedOperators() {
+        Variable x = new Variable("x");
+        Variable y = new Variable("y");
+        Value two = new Value(2);
+        Expression expected = new Addition(
+                new Multiplication(x, new Addition(y, two)), x);// x*(y + 2) + x
+        
+        assertEquals("Expected * to bind tighter than +",
+                expected, Expression.parse("x * (y+2) + x"));
+        assertEquals("Expected parse of toString to be equal",
+                expected, Expression.parse(expected.toString()));
+    }
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid input
+    public void testParse_Invalid() {
+        Expression.parse("x + * 3");
+    }
+
+    // Tests for the Expression factories
+    @Test
+    // covers structurally equal expressions built separately
+    public void testFactories_Interned() {
+        Expression sum1 = Expression.sum(
+                Expression.variable("x"), Expression.number(2));
+        Expression sum2 = Expression.sum(
+                Expression.variable("x"), Expression.number(2));
+        Expression mult1 = Expression.product(sum1, Expression.variable("y"));
+        Expression mult2 = Expression.product(sum2, Expression.variable("y"));
+        
+        assertSame("Expected equal variables to be the same object",
+                Expression.variable("x"), Expression.variable("x"));
+        assertSame("Expected equal sums to be the same object", 
+                sum1, sum2);
+        assertSame("Expected equal products to be the same object", 
+                mult1, mult2);
+        assertNotSame("Expected different expressions to be distinct",
+                sum1, Expression.sum(Expression.variable("x"), Expression.number(3)));
+        Expression nearly = Expression.sum(Expression.variable("x"), Expression.number(2.000001));
+        assertEquals("Expected sums equal to 5 decimal places to be equal", sum1, nearly);
+        assertNotSame("Expected sums of different numbers to be distinct", sum1, nearly);
+    }
+
+    @Test
+    // covers small integers, the constants, other numbers
+    public void testFactories_ValueConstants() {
+        assertSame("Expected 0 to be the ZERO constant",
+                Value.ZERO, Expression.number(0));
+        assertSame("Expected 2 to be the TWO constant",
+                Value.TWO, Expression.number(2.0));
+        assertSame("Expected cached small integers",
+                Expression.number(42), Expression.number(42));
+        assertSame("Expected empty expression to be ZERO",
+                Value.ZERO, Expression.emptyExpression());
+    }
+    
+    @Test
+    // covers several threads interning at once
+    public void testFactories_Threads() throws Exception {
+        final int threads = 4;
+        final Expression[][] built = new Expression[threads][500];
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final Expression[] mine = built[t];
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < mine.length; i++) {
+                    mine[i] = Expression.product(
+                            Expression.sum(Expression.variable("x"), Expression.number(i + 0.5)),
+                            Expression.variable("y" + (char) ('a' + i % 26)));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        for (int t = 1; t < threads; t++) {
+            for (int i = 0; i < 500; i++) {
+                assertSame("Expected one canonical node across threads", built[0][i], built[t][i]);
+            }
+        }
+    }
+
+    @Test
+    // covers numbers equal to 5 decimal places but not exactly
+    public void testFactories_ExactNumbers() {
+        Expression.number(1.000001);
+        assertEquals("Expected exact number, not an equal one interned before",
+                1.000009, Value.of(1.000009).value(), 0);
+        assertEquals("Expected exact number, not zero",
+                0.000009, Value.of(0.000009).value(), 0);
+        assertNotSame("Expected distinct nodes for distinct numbers",
+                Value.of(2.500001), Value.of(2.500009));
+        assertSame("Expected identical nodes for identical numbers",
+                Value.of(2.500009), Value.of(2.500009));
+        assertNotSame("Expected distinct products of distinct numbers",
+                Multiplication.of(Value.of(2.500001), Variable.of("x")),
+                Multiplication.of(Value.of(2.500009), Variable.of("x")));
+        assertEquals("Expected numbers still equal to 5 decimal places",
+                Value.of(2.500001), Value.of(2.500009));
+    }
+    
+    // Tests for variant.isZero() and variant.isOne()
+    @Test
+    // covers values 0, 1 correct to 5 decimal places, other variants
+    public void testIsZeroIsOne() {
+        Variable x = new Variable("x");
+        
+        assertTrue("Expected 0 to be zero", new Value(0.000009).isZero());
+        assertFalse("Expected 0.00001 not to be zero", new Value(0.00001).isZero());
+        assertTrue("Expected 1 to be one", new Value(1.000001).isOne());
+        assertFalse("Expected 0.99999 not to be one", new Value(0.99999).isOne());
+        assertFalse("Expected variable not to be zero", x.isZero() || x.isOne());
+        assertFalse("Expected sum not to be zero", 
+                new Addition(Value.ZERO, Value.ZERO).isZero());
+        assertFalse("Expected product not to be one", 
+                new Multiplication(Value.ONE, Value.ONE).isOne());
+    }
+
     // Tests for variant.equals(variant)
     @Test
     // covers value
@@ -303,6 +454,20 @@ public class ExpressionVariantsTest {
                 value1.hashCode(), value2.hashCode());
     }
     @Test
+    // covers values equal to 5 decimal places but not numerically close
+    public void testHashCode_ValueTruncated() {
+        Value value1 = new Value(0.999999);
+        Value value2 = new Value(0.99999);
+        Value value3 = new Value(1);
+        
+        assertTrue("Expected values with equal string reps to be equal",
+                value1.equals(value2));
+        assertEquals("Expected equal values to have equal hashcodes", 
+                value1.hashCode(), value2.hashCode());
+        assertFalse("Expected values with different string reps to differ",
+                value1.equals(value3) || value3.equals(value1));
+    }
+    @Test
     // covers variable
     public void testHashCode_Variable() {
         Variable var1 = new Variable("Foobar");
@@ -331,6 +496,25 @@ public class ExpressionVariantsTest {
                 add1.hashCode(), add2.hashCode());
     }
     @Test
+    // covers sums with different groupings
+    public void testHashCode_AdditionGrouping() {
+        Variable x = new Variable("x");
+        Variable y = new Variable("y");
+        Addition add1 = new Addition(
+                new Addition(x, y), x);// (x + y) + x
+        Addition add2 = new Addition(
+                x, new Addition(y, x));// x + (y + x)
+        Addition add3 = new Addition(
+                y, new Addition(x, x));// y + (x + x)
+        
+        assertTrue("Expected sums to be equal",
+                add1.equals(add2) && add2.equals(add1));
+        assertEquals("Expected equal sums to have equal hashcodes", 
+                add1.hashCode(), add2.hashCode());
+        assertFalse("Expected sums with different order to be different",
+                add1.equals(add3));
+    }
+    @Test
     // covers multiplication
     public void testHashCode_Multiplication() {
         Variable x = new Variable("x");
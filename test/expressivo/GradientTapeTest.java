@@ -0,0 +1,127 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for GradientTape and Commands.gradientAt.
+ */
+public class GradientTapeTest {
+
+    // Testing strategy
+    //   Partitions for compile: Expression x List<String> -> GradientTape
+    //   - expression: number, variable, sum, product, nested, shared subexpressions
+    //   - slots: alphabetical, other order, extra slots, missing a variable
+    //
+    //   Partitions for gradient: double[] x double[] -> double
+    //   - variables: none, one, many
+    //   - calls: first, repeated at another point
+    //
+    //   Partitions for Commands.gradientAt: String x Map<String, Double> -> Map<String, Double>
+    //   - valid expression, invalid expression, environment missing a variable
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers number, variable, no variables, one variable
+    public void testGradient_Primitives() {
+        final double[] gradient = new double[1];
+
+        final GradientTape number = GradientTape.compile(Expression.parse("2.5"));
+        assertEquals("Expected number", 2.5, number.gradient(new double[0], new double[0]), 0);
+
+        final GradientTape variable = GradientTape.compile(Expression.parse("x"));
+        assertEquals("Expected value of variable", 3, variable.gradient(new double[] {3}, gradient), 0);
+        assertArrayEquals("Expected derivative 1", new double[] {1}, gradient, 0);
+    }
+
+    @Test
+    // covers sum, product, nested, slots in other order and with extra slots,
+    //        repeated calls
+    public void testGradient_Compound() {
+        final Expression expression = Expression.parse("x*x*y + 3*x + (y + z)*(x + 1)");
+        final GradientTape tape = GradientTape.compile(expression, Arrays.asList("z", "w", "y", "x"));
+        final double[] gradient = new double[4];
+
+        assertEquals("Expected value", 2*2*5 + 3*2 + (5 + 7)*(2 + 1),
+                tape.gradient(new double[] {7, 100, 5, 2}, gradient), 0);
+        assertArrayEquals("Expected d/dz = x + 1, d/dw = 0, d/dy = x*x + x + 1, d/dx = 2*x*y + 3 + y + z",
+                new double[] {3, 0, 7, 35}, gradient, 0);
+
+        assertEquals("Expected value at another point", 1*1*1 + 3*1 + (1 + 1)*(1 + 1),
+                tape.gradient(new double[] {1, 1, 1, 1}, gradient), 0);
+        assertArrayEquals("Expected adjoints not carried over from the last call",
+                new double[] {2, 0, 3, 7}, gradient, 0);
+        assertEquals("Expected eval to agree", 8, tape.eval(new double[] {1, 1, 1, 1}), 0);
+    }
+
+    @Test
+    // covers many variables, shared subexpressions; same as forward mode
+    public void testGradient_SameAsForwardMode() {
+        final StringBuilder input = new StringBuilder("(a + b)*(a + b)");
+        for (int i = 0; i < 100; i++) {
+            final String name = "v" + (char) ('a' + i % 26) + (char) ('a' + i / 26);
+            input.append(" + ").append(name).append("*(a + b)*").append(name);
+        }
+        final Expression expression = Expression.parse(input.toString());
+        final List<String> variables = ExpressionCompiler.variables(expression);
+        final GradientTape tape = GradientTape.compile(expression);
+        assertTrue("Expected shared subexpressions on the tape once", tape.size() < 6 * variables.size());
+
+        final Map<String, Double> environment = new HashMap<>();
+        final double[] point = new double[variables.size()];
+        for (int i = 0; i < point.length; i++) {
+            point[i] = 0.5 + i / 64.0;
+            environment.put(variables.get(i), point[i]);
+        }
+        final double[] gradient = new double[point.length];
+        final double value = tape.gradient(point, gradient);
+
+        final double[] dual = new double[2];
+        for (int i = 0; i < point.length; i++) {
+            DualEvaluator.evaluate(expression, variables.get(i), environment, dual);
+            assertEquals("Expected value as forward mode", dual[0], value, 1e-9 * Math.abs(value));
+            assertEquals("Expected partial as forward mode for " + variables.get(i),
+                    dual[1], gradient[i], 1e-9 * Math.abs(dual[1]));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers slots missing a variable
+    public void testCompile_MissingSlot() {
+        GradientTape.compile(Expression.parse("x*y"), Arrays.asList("x"));
+    }
+
+    @Test
+    // covers valid expression
+    public void testGradientAt_Valid() {
+        final Map<String, Double> environment = new HashMap<>();
+        environment.put("x", 2.0);
+        environment.put("y", 3.0);
+        final Map<String, Double> expected = new HashMap<>();
+        expected.put("x", 2*2*3.0 + 1);
+        expected.put("y", 2*2.0);
+        assertEquals("Expected partial of each variable", expected, Commands.gradientAt("x*x*y + x", environment));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers invalid expression
+    public void testGradientAt_Invalid() {
+        Commands.gradientAt("x +", new HashMap<>());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers environment missing a variable
+    public void testGradientAt_Unbound() {
+        Commands.gradientAt("x*y", new HashMap<>());
+    }
+}
@@ -0,0 +1,147 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests for the batch and server modes of Main.
+ */
+public class MainTest {
+
+    // Testing strategy
+    //   Partitions for runBatch: BufferedReader x Writer -> void
+    //   - input: empty, expressions, commands, empty lines, invalid lines
+    //   - command before any expression, after an expression
+    //
+    //   Partitions for BatchPipeline.run: BufferedReader x Writer x int -> void
+    //   - workers: 1, several
+    //   - lines: independent expressions, commands chained on expressions and on
+    //     earlier commands, invalid expressions between an expression and a command
+    //
+    //   Partitions for CommandServer:
+    //   - connections: one, several at once
+    //   - current expression: set on this connection, set only on another connection
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers empty input
+    public void testRunBatch_Empty() throws IOException {
+        assertEquals("Expected no output", "", run(""));
+    }
+
+    @Test
+    // covers expressions, commands, empty and invalid lines,
+    //        command before and after an expression
+    public void testRunBatch_Lines() throws IOException {
+        final String output = run("!simplify x=1\n"
+                + "x*x + x\n"
+                + "\n"
+                + "!simplify x=2\n"
+                + "!simplify y=2\n"
+                + "x +\n"
+                + "!simplify\n"
+                + "!simplify x\n");
+        final String[] lines = output.split(System.lineSeparator());
+        assertEquals("Expected one line per non-empty input line", 7, lines.length);
+        assertEquals("Expected command before an expression to fail",
+                "must enter an expression before using this command", lines[0]);
+        assertEquals("Expected expression", "(x)*(x) + x", lines[1]);
+        assertEquals("Expected simplified expression", "6", lines[2]);
+        assertEquals("Expected unbound variable kept", "(x)*(x) + x", lines[3]);
+        assertTrue("Expected invalid expression reported", lines[4].startsWith("invalid expression"));
+        assertEquals("Expected invalid expression not to become current", "(x)*(x) + x", lines[5]);
+        assertTrue("Expected command syntax error", lines[6].contains("usage: !simplify"));
+    }
+
+    @Test
+    // covers 1 and several workers, independent and chained lines,
+    //        invalid expressions between an expression and a command
+    public void testPipeline_SameAsBatch() throws IOException {
+        final StringBuilder input = new StringBuilder("!simplify x=1\n");
+        for (int i = 0; i < 2000; i++) {
+            switch (i % 5) {
+            case 0: input.append("x*").append(i).append(" + y*(x + ").append(i).append(")\n"); break;
+            case 1: input.append("!simplify y=").append(i).append("\n"); break;
+            case 2: input.append("x + (\n"); break;
+            case 3: input.append("!simplify x=2 y=").append(i % 7).append("\n"); break;
+            default: input.append("\n").append(i).append("*z\n");
+            }
+        }
+        final String expected = run(input.toString());
+        for (int workers : new int[] { 1, 4 }) {
+            final StringWriter out = new StringWriter();
+            BatchPipeline.run(new BufferedReader(new StringReader(input.toString())), out, workers);
+            assertEquals("Expected the output of a sequential batch with " + workers + " workers",
+                    expected, out.toString());
+        }
+    }
+
+    @Test(timeout=10000)
+    // covers one and several connections, current expression per connection
+    public void testServer_Connections() throws Exception {
+        final Thread serving;
+        try (CommandServer server = new CommandServer(0)) {
+            serving = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            serving.start();
+            try (Socket first = new Socket(InetAddress.getLoopbackAddress(), server.port());
+                 Socket second = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+                final BufferedReader firstIn = reader(first);
+                final Writer firstOut = writer(first);
+                final BufferedReader secondIn = reader(second);
+                final Writer secondOut = writer(second);
+
+                firstOut.write("x*y + 1\n");
+                firstOut.flush();
+                assertEquals("Expected expression", "(x)*(y) + 1", firstIn.readLine());
+
+                secondOut.write("!simplify x=2\n");
+                secondOut.flush();
+                assertEquals("Expected no current expression on another connection",
+                        "must enter an expression before using this command", secondIn.readLine());
+
+                firstOut.write("!simplify x=2 y=3\n!d/dy\n");
+                firstOut.flush();
+                assertEquals("Expected simplified expression", "7", firstIn.readLine());
+                assertEquals("Expected derivative", "x", firstIn.readLine());
+            }
+        }
+        serving.join();
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static Writer writer(Socket socket) throws IOException {
+        return new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+    }
+
+    private static String run(String input) throws IOException {
+        final StringWriter out = new StringWriter();
+        Main.runBatch(new BufferedReader(new StringReader(input)), out);
+        return out.toString();
+    }
+}
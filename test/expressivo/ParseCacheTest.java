@@ -0,0 +1,116 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests for ParseCache.
+ */
+public class ParseCacheTest {
+
+    // Testing strategy
+    //   Partitions for parse: String -> ParseResult
+    //   - input: valid, invalid, too long to cache
+    //   - lookup: first, repeated, after eviction
+    //   - bound reached: entries, bytes, neither
+    //   - threads: one, several at once
+    //   Partitions for constructor: int x long -> ParseCache
+    //   - bounds: valid, too small
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers valid and invalid input, first and repeated lookups, neither bound reached
+    public void testParse_HitsAndMisses() {
+        final ParseCache cache = new ParseCache(1024, 1 << 20);
+
+        final ParseResult first = cache.parse("x*x + 1");
+        assertEquals("Expected same result as tryParse", Expression.tryParse("x*x + 1").expression(), first.expression());
+        assertSame("Expected cached result", first, cache.parse("x*x + 1"));
+        final ParseResult invalid = cache.parse("x + (");
+        assertFalse("Expected invalid result", invalid.isValid());
+        assertSame("Expected invalid input cached", invalid, cache.parse("x + ("));
+
+        assertEquals("Expected hits", 2, cache.hits());
+        assertEquals("Expected misses", 2, cache.misses());
+        assertEquals("Expected entries", 2, cache.size());
+        assertEquals("Expected no evictions", 0, cache.evictions());
+
+        cache.clear();
+        assertEquals("Expected no entries", 0, cache.size());
+        assertNotSame("Expected parse after clear", first, cache.parse("x*x + 1"));
+    }
+
+    @Test
+    // covers entries bound reached, lookup after eviction
+    public void testParse_EntriesBound() {
+        final ParseCache cache = new ParseCache(16 * 4, 1 << 20);
+        for (int i = 0; i < 1000; i++) {
+            cache.parse("x + " + i);
+        }
+        assertTrue("Expected at most the bound on entries", cache.size() <= 64);
+        assertEquals("Expected evictions to account for entries", 1000 - cache.size(), cache.evictions());
+        final long misses = cache.misses();
+        cache.parse("x + 0");
+        assertEquals("Expected eldest entry evicted", misses + 1, cache.misses());
+    }
+
+    @Test
+    // covers bytes bound reached, input too long to cache
+    public void testParse_BytesBound() {
+        final ParseCache cache = new ParseCache(1 << 16, 16 * 4096);
+        final StringBuilder longInput = new StringBuilder("x");
+        for (int i = 0; i < 1000; i++) {
+            longInput.append(" + x");
+        }
+        cache.parse(longInput.toString());
+        assertEquals("Expected long input not cached", 0, cache.size());
+        for (int i = 0; i < 1000; i++) {
+            cache.parse("(x + y)*" + i);
+        }
+        assertTrue("Expected fewer entries than the bound on entries", cache.size() < 1000);
+        assertTrue("Expected evictions", cache.evictions() > 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers bounds too small
+    public void testConstructor_TooSmall() {
+        new ParseCache(1, 1 << 20);
+    }
+
+    @Test
+    // covers several threads at once
+    public void testParse_Threads() throws Exception {
+        final ParseCache cache = new ParseCache(256, 1 << 20);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        final String input = "x*" + (i % 500);
+                        assertEquals("Expected same result as tryParse",
+                                Expression.tryParse(input).expression(), cache.parse(input).expression());
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals("Expected every lookup counted", 4 * 5000, cache.hits() + cache.misses());
+        assertTrue("Expected at most the bound on entries", cache.size() <= 256);
+    }
+}
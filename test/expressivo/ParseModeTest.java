@@ -0,0 +1,316 @@
+package expressivo;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that every ParseMode accepts the same language and builds
+ * equal expressions.
+ */
+public class ParseModeTest {
+
+    // Testing strategy
+    //   Partitions for parse: CharSequence -> Expression, for every mode
+    //   - input: number (integer, decimal, leading or trailing point, very long,
+    //     too large for a double), variable, sum, product, parentheses, nested
+    //   - spaces: none, around operators, leading and trailing
+    //   - input invalid: empty, operator missing an operand, unbalanced
+    //     parentheses, adjacent operands, characters outside the language
+    //   - input random, valid or invalid, compared against ANTLR
+    //   - input large: tens of thousands of terms
+    //   - previous parse on the same thread: none, valid, invalid
+    //   - threads: one, several parsing at once
+    //
+    //   Partitions for tryParse: CharSequence -> ParseResult, for every mode
+    //   - input valid, invalid
+    //   - error: unexpected character, missing operand at end of input,
+    //     missing ')', trailing input, parentheses nested too deep
+    //   - nesting: at most MAX_DEPTH, just deeper, far deeper
+    //
+    //   Partitions for Expression.parse(Reader), Expression.parse(ReadableByteChannel)
+    //   - input: valid, invalid
+    //   - input shorter than the buffer, longer than the buffer
+    //   - tokens: within one read, split across reads, longer than the buffer
+    //
+    //   Partitions for warmUp: () -> void
+    //   - called once, called again
+
+    private static final String[] VALID = {
+        "0", "7", "255", "256", "3.14159", "1.", ".5", "00012.50000",
+        "123456789012345678901234567890", "1" + new String(new char[400]).replace('\0', '9'),
+        "x", "Foo", "x + y", "x*y", "x + y*z + 3", "(x + y)*z",
+        "((x*y))*(z + (1 + 2))", "  x   *  ( 2 + y )  ", "x*(y*z)", "(x*y)*z",
+        "x + (y + z) + (((w)))",
+    };
+
+    private static final String[] INVALID = {
+        "", " ", "+", "x +", "* x", "(x", "x)", "()", "x y", "2x", "1.2.3", "x1", "..5",
+        "x\t+ y", "x - y", "3e5", "x + +y",
+    };
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // covers every kind of valid input and spacing
+    public void testParse_Valid() {
+        for (String input : VALID) {
+            final Expression expected = Expression.parse(input);
+            for (ParseMode mode : ParseMode.values()) {
+                assertEquals("Expected " + mode + " to agree with ANTLR on " + input,
+                        expected, Expression.parse(input, mode));
+            }
+        }
+    }
+
+    @Test
+    // covers every kind of invalid input
+    public void testParse_Invalid() {
+        for (String input : INVALID) {
+            for (ParseMode mode : ParseMode.values()) {
+                try {
+                    mode.parse(input);
+                    fail("Expected " + mode + " to reject " + input);
+                } catch (IllegalArgumentException iae) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    // covers random input, valid or invalid
+    public void testParse_Random() {
+        final String alphabet = "0123456789.xyZ+*() ";
+        final Random random = new Random(6005);
+        for (int trial = 0; trial < 2000; trial++) {
+            final StringBuilder input = new StringBuilder();
+            final int length = 1 + random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            final Expression expected = parseOrNull(input, ParseMode.ANTLR);
+            for (ParseMode mode : ParseMode.values()) {
+                assertEquals("Expected " + mode + " to agree with ANTLR on " + input,
+                        expected, parseOrNull(input, mode));
+            }
+        }
+    }
+
+    @Test
+    // covers input large
+    public void testParse_Large() {
+        final StringBuilder input = new StringBuilder("x");
+        for (int i = 1; i <= 20000; i++) {
+            input.append(" + ").append(i).append("*x*(y + ").append(i % 7).append(')');
+        }
+        final Expression expected = Expression.parse(input.toString());
+        for (ParseMode mode : ParseMode.values()) {
+            assertEquals("Expected " + mode + " to agree with ANTLR on a large input",
+                    expected, mode.parse(input));
+        }
+    }
+
+    @Test
+    // covers previous parse valid or invalid on the same thread
+    public void testParse_Reused() {
+        for (ParseMode mode : ParseMode.values()) {
+            assertEquals("Expected first parse", Expression.variable("x"), mode.parse("x"));
+            assertNull("Expected invalid parse", parseOrNull("x + (", mode));
+            assertEquals("Expected parse after an invalid one",
+                    Expression.sum(Expression.variable("y"), Expression.number(1)), mode.parse("y + 1"));
+        }
+    }
+
+    @Test
+    // covers several threads parsing at once
+    public void testParse_Threads() throws InterruptedException {
+        final Thread[] threads = new Thread[4];
+        final Throwable[] failures = new Throwable[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 500; i++) {
+                        final String input = "x*" + (id * 1000 + i) + " + (y + " + i + ")";
+                        for (ParseMode mode : ParseMode.values()) {
+                            assertEquals("Expected " + mode + " to agree with DESCENT on " + input,
+                                    ParseMode.DESCENT.parse(input), mode.parse(input));
+                        }
+                        parseOrNull(input + " +", ParseMode.values()[i % ParseMode.values().length]);
+                    }
+                } catch (Throwable failure) {
+                    failures[id] = failure;
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            assertNull("Expected thread " + t + " to succeed", failures[t]);
+        }
+    }
+
+    @Test
+    // covers tryParse input valid
+    public void testTryParse_Valid() {
+        for (ParseMode mode : ParseMode.values()) {
+            final ParseResult result = mode.tryParse("x*(y + 2)");
+            assertTrue("Expected valid result", result.isValid());
+            assertEquals("Expected expression parsed", Expression.parse("x*(y + 2)"), result.expression());
+            assertEquals("Expected no error index", -1, result.errorIndex());
+            assertNull("Expected no error message", result.errorMessage());
+        }
+    }
+
+    @Test
+    // covers tryParse input invalid, every kind of error
+    public void testTryParse_Invalid() {
+        final String[] inputs = { "x + $", "x *", "(x + 1", "x y", "x + .", };
+        final int[] indexes = { 4, 3, 6, 2, 4, };
+        for (ParseMode mode : ParseMode.values()) {
+            for (int i = 0; i < inputs.length; i++) {
+                final ParseResult result = mode.tryParse(inputs[i]);
+                assertFalse("Expected invalid result for " + inputs[i], result.isValid());
+                assertEquals("Expected index of the error in " + inputs[i],
+                        indexes[i], result.errorIndex());
+                assertNotNull("Expected error message", result.errorMessage());
+                try {
+                    result.expression();
+                    fail("Expected no expression for " + inputs[i]);
+                } catch (IllegalArgumentException iae) {
+                    assertEquals("Expected no stack trace", 0, iae.getStackTrace().length);
+                }
+            }
+        }
+    }
+
+    @Test
+    // covers nesting at most MAX_DEPTH, just deeper, far deeper
+    public void testTryParse_Deep() {
+        for (ParseMode mode : ParseMode.values()) {
+            assertTrue("Expected " + mode + " to accept nesting up to the limit",
+                    mode.tryParse(nested(DescentParser.MAX_DEPTH)).isValid());
+            for (int depth : new int[] { DescentParser.MAX_DEPTH + 1, 5000 }) {
+                final ParseResult result = mode.tryParse(nested(depth));
+                assertFalse("Expected nesting " + depth + " deep rejected", result.isValid());
+                assertEquals("Expected index of the first parenthesis too many",
+                        "x + 1*(".length() * DescentParser.MAX_DEPTH + "x + 1*".length(), result.errorIndex());
+            }
+            assertNull("Expected " + mode + " to reject nesting far deeper", parseOrNull(nested(5000), mode));
+        }
+        final Session session = new Session();
+        assertTrue("Expected console to report the nesting",
+                session.execute(nested(5000)).startsWith("invalid expression"));
+    }
+
+    /** @return a sum nested depth parentheses deep */
+    private static String nested(int depth) {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            input.append("x + 1*(");
+        }
+        input.append("y");
+        for (int i = 0; i < depth; i++) {
+            input.append(")");
+        }
+        return input.toString();
+    }
+
+    @Test
+    // covers Reader input valid, shorter and longer than the buffer,
+    //        tokens within one read and split across reads, longer than the buffer
+    public void testParse_Reader() throws IOException {
+        final String longName = new String(new char[3 * DescentParser.BUFFER_SIZE]).replace('\0', 'v');
+        final StringBuilder input = new StringBuilder("x*2");
+        for (int i = 0; i < 5000; i++) {
+            input.append(" + (y + ").append(i).append(".25)*").append(i % 3 == 0 ? "zed" : longName.substring(0, i % 50 + 1));
+        }
+        input.append(" + ").append(longName).append(" + 1");
+        for (String text : new String[] { "x*(y + 1.5)", input.toString() }) {
+            assertEquals("Expected whole reads to give the expression",
+                    Expression.parse(text, ParseMode.DESCENT), Expression.parse(new StringReader(text)));
+            assertEquals("Expected short reads to give the expression",
+                    Expression.parse(text, ParseMode.DESCENT), Expression.parse(new TrickleReader(text)));
+        }
+    }
+
+    @Test
+    // covers channel input valid and invalid, longer than the buffer
+    public void testParse_Channel() throws IOException {
+        final StringBuilder input = new StringBuilder("1");
+        for (int i = 0; i < 5000; i++) {
+            input.append("+x*").append(i);
+        }
+        final String text = input.toString();
+        assertEquals("Expected channel to give the expression",
+                Expression.parse(text, ParseMode.DESCENT),
+                Expression.parse(Channels.newChannel(new ByteArrayInputStream(text.getBytes("US-ASCII")))));
+        try {
+            Expression.parse(Channels.newChannel(new ByteArrayInputStream((text + "*").getBytes("US-ASCII"))));
+            fail("Expected invalid channel input to be rejected");
+        } catch (IllegalArgumentException iae) {
+            assertTrue("Expected index of the error in message",
+                    iae.getMessage().contains("at index " + (text.length() + 1)));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // covers Reader input invalid
+    public void testParse_ReaderInvalid() throws IOException {
+        Expression.parse(new TrickleReader("x + (y * 2"));
+    }
+
+    /** A reader returning at most a few characters per read */
+    private static final class TrickleReader extends Reader {
+        private final String text;
+        private int next = 0;
+
+        TrickleReader(String text) {
+            this.text = text;
+        }
+
+        @Override public int read(char[] chars, int offset, int length) {
+            if (next == text.length()) {
+                return -1;
+            }
+            final int count = Math.min(Math.min(length, 1 + next % 7), text.length() - next);
+            text.getChars(next, next + count, chars, offset);
+            next += count;
+            return count;
+        }
+
+        @Override public void close() {
+        }
+    }
+
+    @Test
+    // covers warmUp called once, called again
+    public void testWarmUp() {
+        ParseMode.warmUp();
+        ParseMode.warmUp();
+        for (ParseMode mode : ParseMode.values()) {
+            assertEquals("Expected parsing to be unaffected by warming up",
+                    Expression.product(Expression.variable("x"), Expression.number(2)),
+                    mode.parse("x*2"));
+        }
+    }
+
+    private static Expression parseOrNull(CharSequence input, ParseMode mode) {
+        try {
+            return mode.parse(input);
+        } catch (IllegalArgumentException iae) {
+            return null;
+        }
+    }
+}